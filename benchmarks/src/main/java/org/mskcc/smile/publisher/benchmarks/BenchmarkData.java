@@ -0,0 +1,163 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Benchmark payloads built from the example messages in 'test/data', scaled up
+ * to the number of samples per request given. The data directory can be set
+ * with the 'benchmark.data_dir' system property and defaults to '../test/data'.
+ */
+public class BenchmarkData {
+    public static final String DATA_DIR_PROPERTY = "benchmark.data_dir";
+    public static final String REQUEST_EXAMPLE_FILENAME = "incoming_request_example_file.txt";
+    public static final String PATIENT_UPDATE_EXAMPLE_FILENAME = "cmopatientupdate_example_file.txt";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String requestLine;
+    private final String patientUpdateLine;
+    private final Map<String, Object> requestTemplate;
+    private final Map<String, Object> sampleTemplate;
+
+    public BenchmarkData() throws IOException {
+        File dataDir = new File(System.getProperty(DATA_DIR_PROPERTY, "../test/data"));
+        this.requestLine = readFirstLine(new File(dataDir, REQUEST_EXAMPLE_FILENAME));
+        this.patientUpdateLine = readFirstLine(new File(dataDir, PATIENT_UPDATE_EXAMPLE_FILENAME));
+        this.requestTemplate = MAPPER.readValue(requestLine.split("\t", 3)[2], Map.class);
+        List<Map<String, Object>> samples = (List<Map<String, Object>>) requestTemplate.get("samples");
+        this.sampleTemplate = samples.get(0);
+    }
+
+    /**
+     * Returns the request id of the i-th synthetic request.
+     * @param index
+     * @return String
+     */
+    public static String getRequestId(int index) {
+        return "BENCHMARK" + index + "_B";
+    }
+
+    /**
+     * Returns the igo sample id of the i-th sample of a synthetic request.
+     * @param requestId
+     * @param index
+     * @return String
+     */
+    public static String getSampleId(String requestId, int index) {
+        return requestId + "_" + (index + 1);
+    }
+
+    /**
+     * Returns a LIMS request samples response with the given number of samples,
+     * in the format returned by the LIMS request samples endpoint.
+     * @param requestId
+     * @param sampleCount
+     * @param isCmoRequest
+     * @return Map
+     */
+    public Map<String, Object> getLimsRequestSamplesResponse(String requestId, int sampleCount,
+            boolean isCmoRequest) {
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("requestId", requestId);
+        response.put("recipe", requestTemplate.get("recipe"));
+        response.put("isCmoRequest", isCmoRequest);
+        List<Object> samples = new ArrayList<>(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("igoSampleId", getSampleId(requestId, i));
+            sample.put("igoComplete", Boolean.TRUE);
+            sample.put("sampleStatus", "Data QC - Completed");
+            samples.add(sample);
+        }
+        response.put("samples", samples);
+        return response;
+    }
+
+    /**
+     * Returns a copy of the example sample manifest for the given igo sample id.
+     * @param sampleId
+     * @return Map
+     */
+    public Map<String, Object> getSampleManifest(String sampleId) {
+        Map<String, Object> manifest = new HashMap<>(sampleTemplate);
+        manifest.put("igoId", sampleId);
+        return manifest;
+    }
+
+    /**
+     * Returns a request in the format stored by SMILE with the given number of samples.
+     * @param requestId
+     * @param sampleCount
+     * @param isCmoRequest
+     * @return Map
+     */
+    public Map<String, Object> getSmileRequest(String requestId, int sampleCount, boolean isCmoRequest) {
+        Map<String, Object> request = new LinkedHashMap<>(requestTemplate);
+        request.put("requestId", requestId);
+        request.put("igoRequestId", requestId);
+        request.put("isCmoRequest", isCmoRequest);
+        List<Object> samples = new ArrayList<>(sampleCount);
+        for (int i = 0; i < sampleCount; i++) {
+            samples.add(getSampleManifest(getSampleId(requestId, i)));
+        }
+        request.put("samples", samples);
+        return request;
+    }
+
+    /**
+     * Returns a SMILE service response with the given number of requests,
+     * every other request is a non-CMO request.
+     * @param requestCount
+     * @param sampleCount
+     * @return byte[]
+     * @throws IOException
+     */
+    public byte[] getSmileRequestsResponse(int requestCount, int sampleCount) throws IOException {
+        List<Object> requests = new ArrayList<>(requestCount);
+        for (int i = 0; i < requestCount; i++) {
+            requests.add(getSmileRequest(getRequestId(i), sampleCount, i % 2 == 0));
+        }
+        return MAPPER.writeValueAsBytes(requests);
+    }
+
+    /**
+     * Writes a publisher input file made up of the example request and patient
+     * update messages, with the request scaled up to the given number of samples.
+     * @param lineCount
+     * @param sampleCount
+     * @return File - deleted when the JVM exits
+     * @throws IOException
+     */
+    public File writePublisherFile(int lineCount, int sampleCount) throws IOException {
+        String[] requestColumns = requestLine.split("\t", 3);
+        String requestJson = MAPPER.writeValueAsString(getSmileRequest(getRequestId(0), sampleCount, true));
+        File publisherFile = File.createTempFile("publisher-benchmark", ".txt");
+        publisherFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(publisherFile.toPath(),
+                StandardCharsets.UTF_8))) {
+            for (int i = 0; i < lineCount; i++) {
+                if (i % 2 == 0) {
+                    writer.print(requestColumns[0] + "\t" + requestColumns[1] + "\t" + requestJson + "\n");
+                } else {
+                    writer.print(patientUpdateLine + "\n");
+                }
+            }
+        }
+        return publisherFile;
+    }
+
+    private static String readFirstLine(File file) throws IOException {
+        return FileUtils.readLines(file, StandardCharsets.UTF_8).get(0);
+    }
+}
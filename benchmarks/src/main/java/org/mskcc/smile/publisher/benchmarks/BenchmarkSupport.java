@@ -0,0 +1,99 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import java.lang.reflect.Field;
+import org.mskcc.smile.publisher.pipeline.PipelinedPublisher;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestErrorRegistry;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestUtil;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * Wires publisher components for benchmarking without a Spring context.
+ */
+public class BenchmarkSupport {
+
+    /**
+     * Sets a field that is normally injected by Spring.
+     * @param target
+     * @param fieldName
+     * @param value
+     */
+    public static void setField(Object target, String fieldName, Object value) {
+        Field field = ReflectionUtils.findField(target.getClass(), fieldName);
+        if (field == null) {
+            throw new IllegalArgumentException("No field '" + fieldName + "' on " + target.getClass());
+        }
+        ReflectionUtils.makeAccessible(field);
+        ReflectionUtils.setField(field, target, value);
+    }
+
+    /**
+     * Returns a publisher metrics instance that is not exported anywhere.
+     * @return PublisherMetrics
+     */
+    public static PublisherMetrics newPublisherMetrics() {
+        PublisherMetrics publisherMetrics = new PublisherMetrics();
+        publisherMetrics.init();
+        return publisherMetrics;
+    }
+
+    /**
+     * Returns a pipelined publisher with the given max messages in flight.
+     * @param maxInFlight
+     * @param publisherMetrics
+     * @return PipelinedPublisher
+     */
+    public static PipelinedPublisher newPipelinedPublisher(int maxInFlight,
+            PublisherMetrics publisherMetrics) {
+        PipelinedPublisher pipelinedPublisher = new PipelinedPublisher();
+        setField(pipelinedPublisher, "maxInFlight", maxInFlight);
+        setField(pipelinedPublisher, "publisherMetrics", publisherMetrics);
+        pipelinedPublisher.init();
+        return pipelinedPublisher;
+    }
+
+    /**
+     * Returns a LimsRequestUtil calling the given LimsRest base url, such as a
+     * StubLimsServer, with an http connection pool of the given size. The rate
+     * limiter and adaptive concurrency limit are disabled so that only the caller's
+     * concurrency bounds the number of calls in flight.
+     * @param limsBaseUrl
+     * @param maxConnections
+     * @param publisherMetrics
+     * @return LimsRequestUtil
+     * @throws Exception
+     */
+    public static LimsRequestUtil newLimsRequestUtil(String limsBaseUrl, int maxConnections,
+            PublisherMetrics publisherMetrics) throws Exception {
+        LimsRequestUtil limsRequestUtil = new LimsRequestUtil();
+        setField(limsRequestUtil, "limsBaseUrl", limsBaseUrl);
+        setField(limsRequestUtil, "limsUsername", "benchmark");
+        setField(limsRequestUtil, "limsPassword", "benchmark");
+        setField(limsRequestUtil, "limsRequestSamplesEndpoint", StubLimsServer.REQUEST_SAMPLES_ENDPOINT);
+        setField(limsRequestUtil, "limsSampleManifestEndpoint", StubLimsServer.SAMPLE_MANIFEST_ENDPOINT);
+        setField(limsRequestUtil, "sampleManifestBatchSize", 1);
+        setField(limsRequestUtil, "httpMaxConnectionsTotal", maxConnections);
+        setField(limsRequestUtil, "httpMaxConnectionsPerRoute", maxConnections);
+        setField(limsRequestUtil, "httpConnectTimeoutMs", 10000);
+        setField(limsRequestUtil, "httpSocketTimeoutMs", 60000);
+        setField(limsRequestUtil, "httpConnectionRequestTimeoutMs", 60000);
+        setField(limsRequestUtil, "httpKeepAliveMs", 30000L);
+        setField(limsRequestUtil, "httpIdleEvictionMs", 30000L);
+        setField(limsRequestUtil, "rateLimitRequestsPerSecond", 0.0);
+        setField(limsRequestUtil, "rateLimitBurst", 1);
+        setField(limsRequestUtil, "adaptiveConcurrencyEnabled", Boolean.FALSE);
+        setField(limsRequestUtil, "adaptiveConcurrencyInitialLimit", maxConnections);
+        setField(limsRequestUtil, "adaptiveConcurrencyMinLimit", 1);
+        setField(limsRequestUtil, "adaptiveConcurrencyMaxLimit", maxConnections);
+        setField(limsRequestUtil, "adaptiveConcurrencyWindowSize", 50);
+        setField(limsRequestUtil, "adaptiveConcurrencyLatencyTolerance", 2.0);
+        setField(limsRequestUtil, "adaptiveConcurrencyErrorRateThreshold", 0.1);
+        setField(limsRequestUtil, "adaptiveConcurrencyBackoffRatio", 0.75);
+        setField(limsRequestUtil, "publisherMetrics", publisherMetrics);
+        setField(limsRequestUtil, "limsRequestErrorRegistry", new LimsRequestErrorRegistry());
+        setField(limsRequestUtil, "environment", new StandardEnvironment());
+        limsRequestUtil.initRestTemplate();
+        return limsRequestUtil;
+    }
+}
@@ -0,0 +1,120 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Faults injected by the stub servers: a log-normal response latency given by its
+ * median and p99, random 5xx errors, periodic bursts during which every call fails
+ * with a 503, and calls whose connection is closed after a delay without a response.
+ * A profile can be read from system properties sharing a prefix, e.g.
+ * 'loadtest.lims.latency_p99_ms'.
+ */
+public class FaultProfile {
+    // standard normal quantile of the 99th percentile
+    private static final double P99_Z_SCORE = 2.326;
+
+    private final long latencyMedianMs;
+    private final long latencyP99Ms;
+    private final double errorRate;
+    private final long burstIntervalMs;
+    private final long burstDurationMs;
+    private final double timeoutRate;
+    private final long timeoutMs;
+    private final long startMillis = System.currentTimeMillis();
+
+    /**
+     * @param latencyMedianMs median response latency
+     * @param latencyP99Ms p99 response latency, the latency is fixed if not above the median
+     * @param errorRate fraction of calls answered with a 500
+     * @param burstIntervalMs time between the starts of 503 bursts, 0 for no bursts
+     * @param burstDurationMs length of each 503 burst
+     * @param timeoutRate fraction of calls that are never answered
+     * @param timeoutMs delay before the connection of an unanswered call is closed
+     */
+    public FaultProfile(long latencyMedianMs, long latencyP99Ms, double errorRate, long burstIntervalMs,
+            long burstDurationMs, double timeoutRate, long timeoutMs) {
+        this.latencyMedianMs = latencyMedianMs;
+        this.latencyP99Ms = latencyP99Ms;
+        this.errorRate = errorRate;
+        this.burstIntervalMs = burstIntervalMs;
+        this.burstDurationMs = burstDurationMs;
+        this.timeoutRate = timeoutRate;
+        this.timeoutMs = timeoutMs;
+    }
+
+    /**
+     * Returns a profile that only adds a fixed latency to each response.
+     * @param latencyMs
+     * @return FaultProfile
+     */
+    public static FaultProfile fixedLatency(long latencyMs) {
+        return new FaultProfile(latencyMs, latencyMs, 0.0, 0, 0, 0.0, 0);
+    }
+
+    /**
+     * Reads a profile from the system properties with the given prefix: latency_ms,
+     * latency_p99_ms, error_rate, burst_interval_ms, burst_duration_ms, timeout_rate
+     * and timeout_ms. No faults are injected by default.
+     * @param prefix
+     * @return FaultProfile
+     */
+    public static FaultProfile fromSystemProperties(String prefix) {
+        long latencyMedianMs = Long.getLong(prefix + "latency_ms", 0L);
+        return new FaultProfile(latencyMedianMs,
+                Long.getLong(prefix + "latency_p99_ms", latencyMedianMs),
+                Double.parseDouble(System.getProperty(prefix + "error_rate", "0")),
+                Long.getLong(prefix + "burst_interval_ms", 0L),
+                Long.getLong(prefix + "burst_duration_ms", 0L),
+                Double.parseDouble(System.getProperty(prefix + "timeout_rate", "0")),
+                Long.getLong(prefix + "timeout_ms", 30000L));
+    }
+
+    /**
+     * Returns the latency to wait before sending the next response.
+     * @return long
+     */
+    public long nextLatencyMs() {
+        if (latencyMedianMs <= 0 || latencyP99Ms <= latencyMedianMs) {
+            return Math.max(0, latencyMedianMs);
+        }
+        double sigma = Math.log((double) latencyP99Ms / latencyMedianMs) / P99_Z_SCORE;
+        return Math.round(latencyMedianMs * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /**
+     * Returns true if calls made now fall within a 503 burst.
+     * @return Boolean
+     */
+    public Boolean isInBurst() {
+        return burstIntervalMs > 0
+                && (System.currentTimeMillis() - startMillis) % burstIntervalMs < burstDurationMs;
+    }
+
+    /**
+     * Returns true if the next call should be answered with a 500.
+     * @return Boolean
+     */
+    public Boolean nextError() {
+        return errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate;
+    }
+
+    /**
+     * Returns true if the next call should not be answered.
+     * @return Boolean
+     */
+    public Boolean nextTimeout() {
+        return timeoutRate > 0 && ThreadLocalRandom.current().nextDouble() < timeoutRate;
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    @Override
+    public String toString() {
+        return "latency median=" + latencyMedianMs + " ms, p99=" + Math.max(latencyMedianMs, latencyP99Ms)
+                + " ms, error rate=" + errorRate + ", 503 bursts=" + burstDurationMs + " ms every "
+                + burstIntervalMs + " ms, timeout rate=" + timeoutRate + " (closed after " + timeoutMs
+                + " ms)";
+    }
+}
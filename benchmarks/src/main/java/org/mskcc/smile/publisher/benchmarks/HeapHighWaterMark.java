@@ -0,0 +1,60 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks the most heap in use between start() and stop() by sampling the heap usage
+ * at a fixed interval. The per memory pool peaks reported by the JVM cannot be used
+ * since the pools peak at different times, so their sum overstates the heap peak.
+ */
+public class HeapHighWaterMark {
+    private static final long SAMPLE_INTERVAL_MS = 10;
+
+    private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+    private final AtomicLong maxUsedBytes = new AtomicLong();
+    private final AtomicLong maxCommittedBytes = new AtomicLong();
+    private ScheduledExecutorService sampler;
+
+    /**
+     * Collects garbage left over from before the measurement and starts sampling.
+     */
+    public void start() {
+        System.gc();
+        maxUsedBytes.set(0);
+        maxCommittedBytes.set(0);
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "heap-high-water-mark");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(this::sample, 0, SAMPLE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops sampling.
+     * @throws InterruptedException
+     */
+    public void stop() throws InterruptedException {
+        sampler.shutdown();
+        sampler.awaitTermination(1, TimeUnit.SECONDS);
+        sample();
+    }
+
+    public long getMaxUsedBytes() {
+        return maxUsedBytes.get();
+    }
+
+    public long getMaxCommittedBytes() {
+        return maxCommittedBytes.get();
+    }
+
+    private void sample() {
+        maxUsedBytes.accumulateAndGet(memoryBean.getHeapMemoryUsage().getUsed(), Math::max);
+        maxCommittedBytes.accumulateAndGet(memoryBean.getHeapMemoryUsage().getCommitted(), Math::max);
+    }
+}
@@ -0,0 +1,281 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.mskcc.smile.publisher.SmilePublisherPipeline;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestUtil;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.mskcc.smile.publisher.pipeline.sink.NoopPublisherSink;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * End-to-end load test of the LIMS request and SMILE service publisher jobs. Starts
+ * stub LimsRest and SMILE servers that inject the faults set by the 'loadtest.lims.*'
+ * and 'loadtest.smile.*' system properties (see FaultProfile), then runs the real jobs,
+ * each in a new application context that publishes to the noop publisher sink in place
+ * of NATS. Reports the throughput, the publisher metrics summary with the per-phase
+ * latencies, and the heap high-water mark of each run.
+ *
+ * <p>Runs are sized with 'loadtest.request_count' and 'loadtest.sample_count', the jobs
+ * to run are set with 'loadtest.jobs' and each is repeated 'loadtest.runs' times.
+ * Publisher properties can be overridden with '--name=value' arguments, e.g.
+ * '--executor.mode=virtual'.
+ */
+public class LoadTestHarness {
+    public static final String JOBS_PROPERTY = "loadtest.jobs";
+    public static final String RUNS_PROPERTY = "loadtest.runs";
+    public static final String REQUEST_COUNT_PROPERTY = "loadtest.request_count";
+    public static final String SAMPLE_COUNT_PROPERTY = "loadtest.sample_count";
+    public static final String LIMS_FAULTS_PREFIX = "loadtest.lims.";
+    public static final String SMILE_FAULTS_PREFIX = "loadtest.smile.";
+
+    private static final Map<String, String> JOB_NAMES = new LinkedHashMap<>();
+    static {
+        JOB_NAMES.put("lims", BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB);
+        JOB_NAMES.put("smile", BatchConfiguration.SMILE_SERVICE_PUBLISHER_JOB);
+    }
+
+    private final int requestCount;
+    private final int sampleCount;
+    private final StubLimsServer stubLimsServer;
+    private final StubSmileServer stubSmileServer;
+    private final Map<String, String> publisherProperties;
+
+    public LoadTestHarness(int requestCount, int sampleCount, StubLimsServer stubLimsServer,
+            StubSmileServer stubSmileServer, Map<String, String> propertyOverrides) throws Exception {
+        this.requestCount = requestCount;
+        this.sampleCount = sampleCount;
+        this.stubLimsServer = stubLimsServer;
+        this.stubSmileServer = stubSmileServer;
+        this.publisherProperties = getPublisherProperties();
+        publisherProperties.putAll(propertyOverrides);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requestCount = Integer.getInteger(REQUEST_COUNT_PROPERTY, 100);
+        int sampleCount = Integer.getInteger(SAMPLE_COUNT_PROPERTY, 50);
+        int runs = Integer.getInteger(RUNS_PROPERTY, 1);
+        List<String> jobs = Arrays.asList(System.getProperty(JOBS_PROPERTY, "lims,smile").split(","));
+        for (String job : jobs) {
+            if (!JOB_NAMES.containsKey(job)) {
+                throw new IllegalArgumentException("Unknown job '" + job + "' in " + JOBS_PROPERTY
+                        + ", expected one of: " + JOB_NAMES.keySet());
+            }
+        }
+
+        boolean failed = false;
+        BenchmarkData benchmarkData = new BenchmarkData();
+        try (StubLimsServer stubLimsServer = new StubLimsServer(benchmarkData, requestCount, sampleCount,
+                    FaultProfile.fromSystemProperties(LIMS_FAULTS_PREFIX));
+                StubSmileServer stubSmileServer = new StubSmileServer(benchmarkData, sampleCount,
+                    FaultProfile.fromSystemProperties(SMILE_FAULTS_PREFIX))) {
+            LoadTestHarness harness = new LoadTestHarness(requestCount, sampleCount, stubLimsServer,
+                    stubSmileServer, parsePropertyOverrides(args));
+            List<String> reports = new ArrayList<>();
+            for (int run = 1; run <= runs; run++) {
+                for (String job : jobs) {
+                    LoadTestResult result = harness.runJob(JOB_NAMES.get(job));
+                    failed |= !result.isCompleted();
+                    reports.add(result.getReport(run));
+                }
+            }
+            System.out.println("\nLimsRest stub faults: " + stubLimsServer.getFaultProfile());
+            System.out.println("SMILE stub faults: " + stubSmileServer.getFaultProfile());
+            reports.forEach(System.out::println);
+        }
+        System.exit(failed ? 1 : 0);
+    }
+
+    /**
+     * Runs a job in a new application context and returns its results. The time taken
+     * to start the context is not included in the measurement.
+     * @param jobName
+     * @return LoadTestResult
+     * @throws Exception
+     */
+    private LoadTestResult runJob(String jobName) throws Exception {
+        SpringApplication app = new SpringApplication(SmilePublisherPipeline.class);
+        app.setWebApplicationType(WebApplicationType.NONE);
+        List<String> args = new ArrayList<>();
+        publisherProperties.forEach((name, value) -> args.add("--" + name + "=" + value));
+        ConfigurableApplicationContext ctx = app.run(args.toArray(new String[0]));
+        try {
+            JobParametersBuilder jobParamsBuilder = new JobParametersBuilder()
+                    .addString("cmoRequestsFilter", Boolean.FALSE.toString())
+                    .addString("verbose", Boolean.FALSE.toString())
+                    .addLong("launchTimestamp", System.currentTimeMillis());
+            if (jobName.equals(BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB)) {
+                // request ids are resolved from the stub's request deliveries
+                jobParamsBuilder.addString("startDate", LimsRequestUtil.DATE_FORMAT.format(new Date()))
+                        .addString("refreshManifests", Boolean.TRUE.toString());
+            } else {
+                List<String> requestIds = new ArrayList<>(requestCount);
+                for (int i = 0; i < requestCount; i++) {
+                    requestIds.add(BenchmarkData.getRequestId(i));
+                }
+                jobParamsBuilder.addString("requestIds", String.join(",", requestIds));
+            }
+
+            long[] limsCallsBefore = getCallCounts(stubLimsServer);
+            long[] smileCallsBefore = getCallCounts(stubSmileServer);
+            HeapHighWaterMark heapHighWaterMark = new HeapHighWaterMark();
+            heapHighWaterMark.start();
+            long startNanos = System.nanoTime();
+            JobExecution jobExecution = ctx.getBean(JobLauncher.class)
+                    .run(ctx.getBean(jobName, Job.class), jobParamsBuilder.toJobParameters());
+            long elapsedNanos = System.nanoTime() - startNanos;
+            heapHighWaterMark.stop();
+
+            PublisherSink publisherSink = ctx.getBean(PublisherSink.class);
+            return new LoadTestResult(jobExecution, elapsedNanos, heapHighWaterMark,
+                    publisherSink instanceof NoopPublisherSink ? (NoopPublisherSink) publisherSink : null,
+                    subtract(getCallCounts(stubLimsServer), limsCallsBefore),
+                    subtract(getCallCounts(stubSmileServer), smileCallsBefore),
+                    ctx.getBean(PublisherMetrics.class).generateSummary());
+        } finally {
+            ctx.close();
+        }
+    }
+
+    /**
+     * Returns the publisher properties pointing the jobs at the stub servers. The
+     * manifest cache and request deduplication are turned off so that every run
+     * fetches and publishes every request, and job and publisher state is kept in
+     * a temporary file.
+     * @return Map
+     * @throws Exception
+     */
+    private Map<String, String> getPublisherProperties() throws Exception {
+        File stateStore = File.createTempFile("loadtest-publisher-state", ".sqlite");
+        stateStore.deleteOnExit();
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.batch.job.enabled", "false");
+        properties.put("batch.repository.reset", "true");
+        properties.put("publisher.sink", PublisherSink.NOOP);
+        properties.put("publisher.state_store", stateStore.getAbsolutePath());
+        properties.put("lims.base_url", stubLimsServer.getBaseUrl());
+        properties.put("lims.username", "loadtest");
+        properties.put("lims.password", "loadtest");
+        properties.put("lims.request_deliveries_endpoint", StubLimsServer.REQUEST_DELIVERIES_ENDPOINT);
+        properties.put("lims.request_samples_endpoint", StubLimsServer.REQUEST_SAMPLES_ENDPOINT);
+        properties.put("lims.sample_manifest_endpoint", StubLimsServer.SAMPLE_MANIFEST_ENDPOINT);
+        properties.put("lims.publisher_topic", "loadtest.lims");
+        // unanswered calls fail after this rather than the default of a minute
+        properties.put("lims.http.socket_timeout_ms", "5000");
+        properties.put("lims.dedup.enabled", "false");
+        properties.put("lims.manifest_cache.enabled", "false");
+        properties.put("smile.base_url", stubSmileServer.getBaseUrl());
+        properties.put("smile.request_endpoint", StubSmileServer.REQUEST_ENDPOINT);
+        properties.put("smile.cmo_new_request_topic", "loadtest.smile");
+        for (String natsProperty : new String[]{"url", "filter_subject", "consumer_name",
+            "consumer_password", "tls_channel", "keystore_path", "truststore_path", "key_password",
+            "store_password"}) {
+            properties.put("nats." + natsProperty, "");
+        }
+        return properties;
+    }
+
+    private static Map<String, String> parsePropertyOverrides(String[] args) {
+        Map<String, String> overrides = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected publisher property overrides of the form "
+                        + "--name=value, got: " + arg);
+            }
+            overrides.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        return overrides;
+    }
+
+    /**
+     * Returns the call, injected error and injected timeout counts of a stub server.
+     * @param server
+     * @return long[]
+     */
+    private static long[] getCallCounts(StubHttpServer server) {
+        return new long[]{server.getRequestCount(), server.getErrorCount(), server.getTimeoutCount()};
+    }
+
+    private static long[] subtract(long[] counts, long[] countsBefore) {
+        long[] difference = new long[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            difference[i] = counts[i] - countsBefore[i];
+        }
+        return difference;
+    }
+
+    /**
+     * Measurements of a single job run.
+     */
+    private class LoadTestResult {
+        private final JobExecution jobExecution;
+        private final double seconds;
+        private final long heapUsedBytes;
+        private final long heapCommittedBytes;
+        private final NoopPublisherSink publisherSink;
+        private final long[] limsCallCounts;
+        private final long[] smileCallCounts;
+        private final String metricsSummary;
+
+        LoadTestResult(JobExecution jobExecution, long elapsedNanos, HeapHighWaterMark heapHighWaterMark,
+                NoopPublisherSink publisherSink, long[] limsCallCounts, long[] smileCallCounts,
+                String metricsSummary) {
+            this.jobExecution = jobExecution;
+            this.seconds = Math.max(elapsedNanos, 1) / 1e9;
+            this.heapUsedBytes = heapHighWaterMark.getMaxUsedBytes();
+            this.heapCommittedBytes = heapHighWaterMark.getMaxCommittedBytes();
+            this.publisherSink = publisherSink;
+            this.limsCallCounts = limsCallCounts;
+            this.smileCallCounts = smileCallCounts;
+            this.metricsSummary = metricsSummary;
+        }
+
+        Boolean isCompleted() {
+            return jobExecution.getExitStatus().getExitCode().equals(ExitStatus.COMPLETED.getExitCode());
+        }
+
+        String getReport(int run) {
+            StringBuilder builder = new StringBuilder("\nLOAD TEST REPORT: ")
+                    .append(jobExecution.getJobInstance().getJobName()).append(" (run ").append(run)
+                    .append(")\n");
+            builder.append(String.format("%n\tstatus: %s", jobExecution.getExitStatus().getExitCode()));
+            if (!isCompleted()) {
+                String description = jobExecution.getExitStatus().getExitDescription();
+                builder.append(String.format("%n\tfailure: %s", description.split("\n", 2)[0]));
+            }
+            builder.append(String.format("%n\trequests: %d, samples per request: %d",
+                    requestCount, sampleCount));
+            builder.append(String.format("%n\telapsed: %.2f s", seconds));
+            builder.append(String.format("%n\tthroughput: %.1f requests/sec, %.1f samples/sec",
+                    requestCount / seconds, (long) requestCount * sampleCount / seconds));
+            if (publisherSink != null) {
+                builder.append(String.format("%n\tpublished: %d messages (%d bytes), %.1f messages/sec, "
+                        + "%.1f MB/sec", publisherSink.getMessageCount(), publisherSink.getByteCount(),
+                        publisherSink.getMessageCount() / seconds,
+                        publisherSink.getByteCount() / seconds / (1024 * 1024)));
+            }
+            builder.append(String.format("%n\tLimsRest stub: %d calls, %d 5xx and %d timeouts injected",
+                    limsCallCounts[0], limsCallCounts[1], limsCallCounts[2]));
+            builder.append(String.format("%n\tSMILE stub: %d calls, %d 5xx and %d timeouts injected",
+                    smileCallCounts[0], smileCallCounts[1], smileCallCounts[2]));
+            builder.append(String.format("%n\theap high-water mark: %.1f MB used, %.1f MB committed",
+                    heapUsedBytes / (1024.0 * 1024), heapCommittedBytes / (1024.0 * 1024)));
+            return builder.append("\n").append(metricsSummary).toString();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.mskcc.smile.publisher.SmilePublisherPipeline;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
+
+/**
+ * Measures the startup time of single job CLI runs with each of the fast start
+ * settings. Every run is a new publisher JVM, started from this JVM's class path, that
+ * publishes a one message JSON file to the noop publisher sink. The time to the first
+ * published message is read from the publisher's "First message published" log line,
+ * and the process time covers the whole run including shutdown. Runs of the settings
+ * are interleaved so that they see the same host load.
+ *
+ * <p>The settings to compare are set with 'startup.settings' and each is run
+ * 'startup.runs' times. The 'fast_cds' setting records a dynamic class data sharing
+ * archive with a training run first, as the Docker image does.
+ */
+public class StartupTimeHarness {
+    public static final String SETTINGS_PROPERTY = "startup.settings";
+    public static final String RUNS_PROPERTY = "startup.runs";
+
+    private static final Pattern FIRST_PUBLISH_PATTERN =
+            Pattern.compile("First message published (\\d+) ms after JVM start");
+    private static final String LAZY_INIT = "-Dspring.main.lazy-initialization=true";
+    private static final String IN_MEMORY_JOB_REPOSITORY = "-Dbatch.repository.in_memory=true";
+    private static final String CDS_SETTING = "fast_cds";
+    private static final String CDS_ARCHIVE = "publisher.jsa";
+
+    private static final Map<String, List<String>> SETTINGS = new LinkedHashMap<>();
+    static {
+        SETTINGS.put("default", Collections.emptyList());
+        SETTINGS.put("lazy", Arrays.asList(LAZY_INIT));
+        SETTINGS.put("in_memory", Arrays.asList(IN_MEMORY_JOB_REPOSITORY));
+        SETTINGS.put("fast", Arrays.asList(LAZY_INIT, IN_MEMORY_JOB_REPOSITORY));
+        SETTINGS.put(CDS_SETTING, Arrays.asList(LAZY_INIT, IN_MEMORY_JOB_REPOSITORY,
+                "-XX:SharedArchiveFile=" + CDS_ARCHIVE));
+    }
+
+    private final Path workingDirectory;
+    private final Path jsonFile;
+    private final List<String> publisherProperties;
+
+    public StartupTimeHarness(Path workingDirectory) throws Exception {
+        this.workingDirectory = workingDirectory;
+        this.jsonFile = workingDirectory.resolve("startup.json");
+        Files.write(jsonFile, "[{\"startup\": true}]".getBytes(StandardCharsets.UTF_8));
+        this.publisherProperties = getPublisherProperties();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int runs = Integer.getInteger(RUNS_PROPERTY, 5);
+        List<String> settings = Arrays.asList(System.getProperty(SETTINGS_PROPERTY,
+                String.join(",", SETTINGS.keySet())).split(","));
+        for (String setting : settings) {
+            if (!SETTINGS.containsKey(setting)) {
+                throw new IllegalArgumentException("Unknown setting '" + setting + "' in "
+                        + SETTINGS_PROPERTY + ", expected one of: " + SETTINGS.keySet());
+            }
+        }
+
+        Path workingDirectory = Files.createTempDirectory("publisher-startup");
+        StartupTimeHarness harness = new StartupTimeHarness(workingDirectory);
+        if (settings.contains(CDS_SETTING)) {
+            harness.recordCdsArchive();
+        }
+        Map<String, List<long[]>> results = new LinkedHashMap<>();
+        settings.forEach(setting -> results.put(setting, new ArrayList<>()));
+        for (int run = 1; run <= runs; run++) {
+            for (String setting : settings) {
+                results.get(setting).add(harness.runPublisher(setting, SETTINGS.get(setting)));
+            }
+        }
+
+        System.out.println(String.format("%nSTARTUP TIME REPORT: JSON file publisher job, %d runs, "
+                + "median [min - max] ms%n", runs));
+        System.out.println(String.format("\t%-12s %-26s %s", "setting", "first message published",
+                "process"));
+        for (Map.Entry<String, List<long[]>> entry : results.entrySet()) {
+            System.out.println(String.format("\t%-12s %-26s %s", entry.getKey(),
+                    summarize(entry.getValue(), 0), summarize(entry.getValue(), 1)));
+        }
+    }
+
+    /**
+     * Records the class data sharing archive used by the 'fast_cds' setting with a
+     * training run using the fast start settings.
+     * @throws Exception
+     */
+    private void recordCdsArchive() throws Exception {
+        List<String> jvmArgs = new ArrayList<>(SETTINGS.get("fast"));
+        jvmArgs.add("-XX:ArchiveClassesAtExit=" + CDS_ARCHIVE);
+        runPublisher("training", jvmArgs);
+    }
+
+    /**
+     * Runs the publisher in a new JVM with the given JVM arguments and returns the
+     * time to its first published message and its process time, in milliseconds.
+     * @param setting - the setting name, used in error messages
+     * @param jvmArgs
+     * @return long[]
+     * @throws Exception
+     */
+    private long[] runPublisher(String setting, List<String> jvmArgs) throws Exception {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(jvmArgs);
+        command.addAll(publisherProperties);
+        command.addAll(Arrays.asList("-cp", getAbsoluteClassPath(),
+                SmilePublisherPipeline.class.getName(), "-j", jsonFile.toString(), "-t", "startup"));
+        ProcessBuilder processBuilder = new ProcessBuilder(command)
+                .directory(workingDirectory.toFile())
+                .redirectErrorStream(true);
+
+        long startNanos = System.nanoTime();
+        Process process = processBuilder.start();
+        long firstPublishMillis = -1;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append("\n");
+                Matcher matcher = FIRST_PUBLISH_PATTERN.matcher(line);
+                if (matcher.find()) {
+                    firstPublishMillis = Long.parseLong(matcher.group(1));
+                }
+            }
+        }
+        int exitStatus = process.waitFor();
+        long processMillis = (System.nanoTime() - startNanos) / 1000000;
+        if (exitStatus != 0 || firstPublishMillis < 0) {
+            System.err.println(output);
+            throw new IllegalStateException("Publisher run with the '" + setting + "' setting "
+                    + (exitStatus != 0 ? "exited with status " + exitStatus : "published no message"));
+        }
+        return new long[]{firstPublishMillis, processMillis};
+    }
+
+    /**
+     * Returns this JVM's class path with absolute paths, since the publisher runs in
+     * the working directory.
+     * @return String
+     */
+    private static String getAbsoluteClassPath() {
+        List<String> classPath = new ArrayList<>();
+        for (String entry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            classPath.add(Paths.get(entry).toAbsolutePath().toString());
+        }
+        return String.join(File.pathSeparator, classPath);
+    }
+
+    /**
+     * Returns the publisher properties for a JSON file run publishing to the noop
+     * publisher sink. The LimsRest, SMILE and NATS properties are required to start
+     * the application context but are not used.
+     * @return List
+     */
+    private List<String> getPublisherProperties() {
+        Map<String, String> properties = new LinkedHashMap<>();
+        properties.put("spring.batch.job.enabled", "false");
+        properties.put("publisher.sink", PublisherSink.NOOP);
+        properties.put("publisher.state_store", workingDirectory.resolve("publisher_state.sqlite")
+                .toString());
+        properties.put("lims.base_url", "http://localhost");
+        properties.put("lims.username", "startup");
+        properties.put("lims.password", "startup");
+        properties.put("lims.request_deliveries_endpoint", StubLimsServer.REQUEST_DELIVERIES_ENDPOINT);
+        properties.put("lims.request_samples_endpoint", StubLimsServer.REQUEST_SAMPLES_ENDPOINT);
+        properties.put("lims.sample_manifest_endpoint", StubLimsServer.SAMPLE_MANIFEST_ENDPOINT);
+        properties.put("lims.publisher_topic", "startup.lims");
+        properties.put("smile.base_url", "http://localhost");
+        properties.put("smile.request_endpoint", StubSmileServer.REQUEST_ENDPOINT);
+        properties.put("smile.cmo_new_request_topic", "startup.smile");
+        for (String natsProperty : new String[]{"url", "filter_subject", "consumer_name",
+            "consumer_password", "tls_channel", "keystore_path", "truststore_path", "key_password",
+            "store_password"}) {
+            properties.put("nats." + natsProperty, "");
+        }
+        List<String> systemProperties = new ArrayList<>();
+        properties.forEach((name, value) -> systemProperties.add("-D" + name + "=" + value));
+        return systemProperties;
+    }
+
+    /**
+     * Returns the median, min and max of the given column of the run results.
+     * @param runResults
+     * @param column
+     * @return String
+     */
+    private static String summarize(List<long[]> runResults, int column) {
+        List<Long> values = new ArrayList<>();
+        runResults.forEach(result -> values.add(result[column]));
+        Collections.sort(values);
+        return String.format("%d [%d - %d]", values.get(values.size() / 2), values.get(0),
+                values.get(values.size() - 1));
+    }
+}
@@ -0,0 +1,140 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Base for the local stub servers. Each response is sent after the latency given
+ * by the fault profile without holding a server thread while waiting, so a stub
+ * can keep thousands of calls in flight and the client side is what gets measured.
+ * Errors and unanswered calls are injected as configured by the fault profile.
+ */
+public abstract class StubHttpServer implements AutoCloseable {
+    private final HttpServer server;
+    private final ScheduledExecutorService responseScheduler;
+    private final FaultProfile faultProfile;
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    protected final ObjectMapper mapper = new ObjectMapper();
+
+    /**
+     * Supplies the JSON response body for a call.
+     */
+    @FunctionalInterface
+    protected interface ResponseBody {
+        Object get(HttpExchange exchange) throws IOException;
+    }
+
+    protected StubHttpServer(String threadName, FaultProfile faultProfile) throws IOException {
+        this.faultProfile = faultProfile;
+        this.responseScheduler = Executors.newScheduledThreadPool(
+                Runtime.getRuntime().availableProcessors(), runnable -> {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+        server.setExecutor(responseScheduler);
+    }
+
+    /**
+     * Serves the given endpoint path, the server is started with start().
+     * @param path
+     * @param responseBody
+     */
+    protected void createContext(String path, ResponseBody responseBody) {
+        server.createContext(path, exchange -> respond(exchange, responseBody));
+    }
+
+    protected void start() {
+        server.start();
+    }
+
+    /**
+     * Returns the base url the endpoints are served under.
+     * @return String
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public FaultProfile getFaultProfile() {
+        return faultProfile;
+    }
+
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    public long getErrorCount() {
+        return errorCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responseScheduler.shutdownNow();
+    }
+
+    /**
+     * Returns the part of the request path following the endpoint path.
+     * @param exchange
+     * @return String
+     */
+    protected String getPathParameter(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        return path.substring(exchange.getHttpContext().getPath().length());
+    }
+
+    private void respond(HttpExchange exchange, ResponseBody responseBody) throws IOException {
+        requestCount.incrementAndGet();
+        long latencyMs = faultProfile.nextLatencyMs();
+        if (faultProfile.nextTimeout()) {
+            // closing the exchange before any response is sent drops the connection
+            timeoutCount.incrementAndGet();
+            responseScheduler.schedule(exchange::close, faultProfile.getTimeoutMs(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        int status = 200;
+        byte[] response;
+        if (faultProfile.isInBurst()) {
+            status = 503;
+        } else if (faultProfile.nextError()) {
+            status = 500;
+        }
+        if (status == 200) {
+            response = mapper.writeValueAsBytes(responseBody.get(exchange));
+        } else {
+            errorCount.incrementAndGet();
+            response = ("{\"error\":\"injected " + status + "\"}").getBytes(StandardCharsets.UTF_8);
+        }
+        int responseStatus = status;
+        responseScheduler.schedule(() -> {
+            try {
+                exchange.getResponseHeaders().put("Content-Type",
+                        Collections.singletonList("application/json"));
+                exchange.sendResponseHeaders(responseStatus, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            } catch (IOException e) {
+                exchange.close();
+            }
+        }, latencyMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,69 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local stand-in for LimsRest serving synthetic request deliveries, request samples
+ * and sample manifests over http, with the latency and faults of the given profile.
+ */
+public class StubLimsServer extends StubHttpServer {
+    public static final String REQUEST_DELIVERIES_ENDPOINT = "/getDeliveries/";
+    public static final String REQUEST_SAMPLES_ENDPOINT = "/getRequestSamples/";
+    public static final String SAMPLE_MANIFEST_ENDPOINT = "/api/getSampleManifest/";
+
+    private final int sampleCount;
+
+    /**
+     * Starts the stub on a free local port, answering each call after a fixed latency.
+     * @param benchmarkData
+     * @param sampleCount number of samples listed for each request
+     * @param latencyMs delay before each response is sent
+     * @throws IOException
+     */
+    public StubLimsServer(BenchmarkData benchmarkData, int sampleCount, long latencyMs) throws IOException {
+        this(benchmarkData, 1, sampleCount, FaultProfile.fixedLatency(latencyMs));
+    }
+
+    /**
+     * Starts the stub on a free local port.
+     * @param benchmarkData
+     * @param requestCount number of requests listed as delivered since any timestamp
+     * @param sampleCount number of samples listed for each request
+     * @param faultProfile
+     * @throws IOException
+     */
+    public StubLimsServer(BenchmarkData benchmarkData, int requestCount, int sampleCount,
+            FaultProfile faultProfile) throws IOException {
+        super("stub-lims-server", faultProfile);
+        this.sampleCount = sampleCount;
+        createContext(REQUEST_DELIVERIES_ENDPOINT, exchange -> {
+            long startTimestamp = Long.parseLong(getPathParameter(exchange));
+            List<Object> deliveries = new ArrayList<>(requestCount);
+            for (int i = 0; i < requestCount; i++) {
+                Map<String, Object> delivery = new LinkedHashMap<>();
+                delivery.put("request", BenchmarkData.getRequestId(i));
+                delivery.put("deliveryDate", startTimestamp + i);
+                deliveries.add(delivery);
+            }
+            return deliveries;
+        });
+        createContext(REQUEST_SAMPLES_ENDPOINT, exchange ->
+                benchmarkData.getLimsRequestSamplesResponse(getPathParameter(exchange), sampleCount, true));
+        createContext(SAMPLE_MANIFEST_ENDPOINT, exchange -> {
+            List<Object> sampleManifests = new ArrayList<>();
+            for (String sampleId : getPathParameter(exchange).split(",")) {
+                sampleManifests.add(benchmarkData.getSampleManifest(sampleId));
+            }
+            return sampleManifests;
+        });
+        start();
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+}
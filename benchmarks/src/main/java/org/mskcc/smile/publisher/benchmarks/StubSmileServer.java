@@ -0,0 +1,39 @@
+package org.mskcc.smile.publisher.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local stand-in for the SMILE service request endpoint. Answers a POSTed JSON array
+ * of request ids with a JSON array of synthetic CMO requests, with the latency and
+ * faults of the given profile.
+ */
+public class StubSmileServer extends StubHttpServer {
+    public static final String REQUEST_ENDPOINT = "/request/";
+
+    /**
+     * Starts the stub on a free local port.
+     * @param benchmarkData
+     * @param sampleCount number of samples in each request
+     * @param faultProfile
+     * @throws IOException
+     */
+    public StubSmileServer(BenchmarkData benchmarkData, int sampleCount, FaultProfile faultProfile)
+            throws IOException {
+        super("stub-smile-server", faultProfile);
+        createContext(REQUEST_ENDPOINT, exchange -> {
+            List<String> requestIds;
+            try (InputStream body = exchange.getRequestBody()) {
+                requestIds = mapper.readValue(body, List.class);
+            }
+            List<Object> requests = new ArrayList<>(requestIds.size());
+            for (String requestId : requestIds) {
+                requests.add(benchmarkData.getSmileRequest(requestId, sampleCount, true));
+            }
+            return requests;
+        });
+        start();
+    }
+}
@@ -0,0 +1,57 @@
+package org.mskcc.smile.publisher.pipeline;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkData;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * Reads a publisher input file made of the example request and patient update
+ * messages. The number of lines is scaled down as the number of samples per
+ * request grows so that every input file is roughly the same size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilePublisherReaderBenchmark {
+    private static final int TOTAL_SAMPLES = 100000;
+
+    @Param({"10", "100", "1000", "10000"})
+    private int sampleCount;
+
+    private File publisherFile;
+
+    @Setup
+    public void setup() throws Exception {
+        int lineCount = Math.max(2, 2 * TOTAL_SAMPLES / sampleCount);
+        this.publisherFile = new BenchmarkData().writePublisherFile(lineCount, sampleCount);
+    }
+
+    @Benchmark
+    public void readFile(Blackhole blackhole) throws Exception {
+        FilePublisherReader reader = new FilePublisherReader();
+        BenchmarkSupport.setField(reader, "publisherFilename", publisherFile.getAbsolutePath());
+        reader.open(new ExecutionContext());
+        PublisherRecord record;
+        while ((record = reader.read()) != null) {
+            blackhole.consume(record);
+        }
+        reader.close();
+    }
+}
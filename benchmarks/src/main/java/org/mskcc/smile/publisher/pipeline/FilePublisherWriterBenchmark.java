@@ -0,0 +1,96 @@
+package org.mskcc.smile.publisher.pipeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkSupport;
+import org.mskcc.smile.publisher.pipeline.sink.NoopPublisherSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Replays publisher file records through the file publisher writer, chunk by chunk
+ * as the file publisher step does, and reports messages published per second.
+ * Records are spread round robin over the given number of topics. Each publish waits
+ * for the given latency before counting the message, standing in for the NATS round
+ * trip that the pipelined publisher overlaps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class FilePublisherWriterBenchmark {
+    private static final int MESSAGE_COUNT = 640;
+
+    @Param({"1", "16"})
+    private int topicCount;
+
+    @Param({"1", "16"})
+    private int maxInFlight;
+
+    @Param({"10", "64"})
+    private int chunkSize;
+
+    @Param({"1000"})
+    private long publishLatencyMicros;
+
+    private List<List<PublisherRecord>> chunks;
+    private FilePublisherWriter filePublisherWriter;
+    private PipelinedPublisher pipelinedPublisher;
+
+    @Setup
+    public void setup() {
+        List<PublisherRecord> records = new ArrayList<>();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            records.add(new PublisherRecord("BENCHMARK.topic-" + (i % topicCount),
+                    "{\"message\": " + i + "}"));
+        }
+        this.chunks = new ArrayList<>();
+        for (int start = 0; start < MESSAGE_COUNT; start += chunkSize) {
+            chunks.add(records.subList(start, Math.min(start + chunkSize, MESSAGE_COUNT)));
+        }
+        this.pipelinedPublisher = BenchmarkSupport.newPipelinedPublisher(maxInFlight,
+                BenchmarkSupport.newPublisherMetrics());
+        this.filePublisherWriter = new FilePublisherWriter();
+        BenchmarkSupport.setField(filePublisherWriter, "publisherSink", new LatencyPublisherSink());
+        BenchmarkSupport.setField(filePublisherWriter, "pipelinedPublisher", pipelinedPublisher);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipelinedPublisher.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGE_COUNT)
+    public void replayFile() throws Exception {
+        for (List<PublisherRecord> chunk : chunks) {
+            filePublisherWriter.write(chunk);
+        }
+    }
+
+    /**
+     * Noop publisher sink that blocks for the publish latency before counting a message.
+     */
+    private class LatencyPublisherSink extends NoopPublisherSink {
+        @Override
+        public void publish(String topic, String message) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(publishLatencyMicros));
+            super.publish(topic, message);
+        }
+    }
+}
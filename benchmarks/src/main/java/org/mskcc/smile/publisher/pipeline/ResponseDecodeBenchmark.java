@@ -0,0 +1,130 @@
+package org.mskcc.smile.publisher.pipeline;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkData;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestUtil;
+import org.mskcc.smile.publisher.pipeline.smile_server.SmileRequestEnvelope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares decoding LimsRest and SMILE response bodies by decoding them into
+ * Object, writing them back to a JSON string and parsing that again (the
+ * 'roundTrip' benchmarks, as the publisher used to) with decoding them once
+ * (the 'decodeOnce' benchmarks, as the publisher does now). Response bodies are
+ * decoded from bytes the way the RestTemplate message converter does. Run with
+ * '-prof gc' to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ResponseDecodeBenchmark {
+    private static final int DELIVERY_COUNT = 1000;
+    private static final int SMILE_REQUEST_COUNT = 10;
+
+    @Param({"10", "100", "1000", "10000"})
+    private int sampleCount;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private byte[] requestSamplesResponse;
+    private byte[] requestDeliveriesResponse;
+    private byte[] smileRequestsResponse;
+    private LimsRequestUtil limsRequestUtil;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkData benchmarkData = new BenchmarkData();
+        this.requestSamplesResponse = mapper.writeValueAsBytes(benchmarkData.getLimsRequestSamplesResponse(
+                BenchmarkData.getRequestId(0), sampleCount, true));
+        // every request is delivered twice
+        List<Map<String, Object>> deliveries = new ArrayList<>(DELIVERY_COUNT);
+        for (int i = 0; i < DELIVERY_COUNT; i++) {
+            Map<String, Object> delivery = new LinkedHashMap<>();
+            delivery.put("request", BenchmarkData.getRequestId(i / 2));
+            delivery.put("deliveryDate", 1600000000000L + i);
+            deliveries.add(delivery);
+        }
+        this.requestDeliveriesResponse = mapper.writeValueAsBytes(deliveries);
+        this.smileRequestsResponse = benchmarkData.getSmileRequestsResponse(SMILE_REQUEST_COUNT, sampleCount);
+        this.limsRequestUtil = new LimsRequestUtil();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Object>> requestSamplesRoundTrip(Blackhole blackhole) throws Exception {
+        Object body = mapper.readValue(requestSamplesResponse, Object.class);
+        Map<String, Object> response = mapper.readValue(mapper.writeValueAsString(body), Map.class);
+        // the debug log message was built even when debug logging was off
+        blackhole.consume("Response from LIMS:\n" + mapper.writeValueAsString(body));
+        List<Map> samplesList = mapper.readValue(mapper.writeValueAsString(response.get("samples")),
+                List.class);
+        Map<String, Map<String, Object>> samples = new LinkedHashMap<>();
+        for (Map m : samplesList) {
+            samples.put((String) m.get("igoSampleId"), m);
+        }
+        return samples;
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Object>> requestSamplesDecodeOnce() throws Exception {
+        Map<String, Object> response = mapper.readValue(requestSamplesResponse, Map.class);
+        return limsRequestUtil.getSamplesFromRequestResponse(response);
+    }
+
+    @Benchmark
+    public List<String> requestDeliveriesRoundTrip() throws Exception {
+        Object body = mapper.readValue(requestDeliveriesResponse, Object.class);
+        List<Map> response = mapper.readValue(mapper.writeValueAsString(body), List.class);
+        List<String> requestIds = new ArrayList<>();
+        for (Map m : response) {
+            String requestId = (String) m.get("request");
+            if (!requestIds.contains(requestId)) {
+                requestIds.add(requestId);
+            }
+        }
+        return requestIds;
+    }
+
+    @Benchmark
+    public List<String> requestDeliveriesDecodeOnce() throws Exception {
+        JsonNode response = mapper.readTree(requestDeliveriesResponse);
+        Set<String> requestIds = new LinkedHashSet<>();
+        for (JsonNode delivery : response) {
+            requestIds.add(delivery.path("request").asText());
+        }
+        return new ArrayList<>(requestIds);
+    }
+
+    @Benchmark
+    public List<String> smileRequestsRoundTrip() throws Exception {
+        Object body = mapper.readValue(smileRequestsResponse, Object.class);
+        List<String> requestJsons = new ArrayList<>();
+        mapper.readTree(mapper.writeValueAsString(body)).forEach(node -> requestJsons.add(node.toString()));
+        return requestJsons;
+    }
+
+    @Benchmark
+    public List<SmileRequestEnvelope> smileRequestsDecodeOnce() throws Exception {
+        return SmileRequestEnvelope.fromJsonArray(smileRequestsResponse);
+    }
+}
@@ -0,0 +1,111 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkData;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkSupport;
+import org.mskcc.smile.publisher.benchmarks.StubLimsServer;
+import org.mskcc.smile.publisher.pipeline.config.VirtualThreads;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Compares the 'platform' and 'virtual' executor modes by fetching a request's
+ * sample manifests with the blocking LimsRest client from a local stub LimsRest
+ * server that answers each call after a fixed latency. The platform mode uses the
+ * default async LimsRest thread pool (5 to 10 threads). The http connection pool
+ * is sized to the sample count in both modes so that only the executor differs.
+ * The virtual mode needs JDK 21 or later.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ExecutorModeBenchmark {
+    @Param({"platform", "virtual"})
+    private String executorMode;
+
+    @Param({"100", "1000"})
+    private int sampleCount;
+
+    @Param({"20"})
+    private long latencyMs;
+
+    private StubLimsServer stubLimsServer;
+    private LimsRequestUtil limsRequestUtil;
+    private TaskExecutor taskExecutor;
+    private ExecutorService virtualThreadExecutor;
+
+    @Setup
+    public void setup() throws Exception {
+        this.stubLimsServer = new StubLimsServer(new BenchmarkData(), sampleCount, latencyMs);
+        this.limsRequestUtil = BenchmarkSupport.newLimsRequestUtil(stubLimsServer.getBaseUrl(), sampleCount,
+                BenchmarkSupport.newPublisherMetrics());
+        if (executorMode.equals("virtual")) {
+            this.virtualThreadExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor("lims-request-");
+            this.taskExecutor = new ConcurrentTaskExecutor(virtualThreadExecutor);
+        } else {
+            ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
+            threadPoolTaskExecutor.setCorePoolSize(5);
+            threadPoolTaskExecutor.setMaxPoolSize(10);
+            threadPoolTaskExecutor.initialize();
+            this.taskExecutor = threadPoolTaskExecutor;
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        if (taskExecutor instanceof ThreadPoolTaskExecutor) {
+            ((ThreadPoolTaskExecutor) taskExecutor).shutdown();
+        }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+        limsRequestUtil.closeHttpClient();
+        stubLimsServer.close();
+    }
+
+    /**
+     * Fetches every sample manifest of a request, running each fetch on the
+     * executor the way the @Async LimsRest calls are run, and waits for all of them.
+     * @return List
+     */
+    @Benchmark
+    public List<List<Object>> fetchSampleManifests() {
+        String requestId = BenchmarkData.getRequestId(0);
+        List<CompletableFuture<List<Object>>> futures = new ArrayList<>();
+        for (int i = 0; i < sampleCount; i++) {
+            String sampleId = BenchmarkData.getSampleId(requestId, i);
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return limsRequestUtil.getSampleManifest(sampleId).join();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }, taskExecutor));
+        }
+        List<List<Object>> sampleManifests = new ArrayList<>();
+        for (CompletableFuture<List<Object>> future : futures) {
+            sampleManifests.add(future.join());
+        }
+        return sampleManifests;
+    }
+}
@@ -0,0 +1,56 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkData;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkSupport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks LimsRequestProcessor against a stubbed LimsRequestUtil, so only
+ * the assembly of requests from their sample manifests is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LimsRequestProcessorBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    private int sampleCount;
+
+    @Param({"1", "50"})
+    private int sampleManifestBatchSize;
+
+    private LimsRequestProcessor limsRequestProcessor;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkData benchmarkData = new BenchmarkData();
+        this.limsRequestProcessor = new LimsRequestProcessor();
+        BenchmarkSupport.setField(limsRequestProcessor, "cmoRequestsFilter", Boolean.TRUE);
+        BenchmarkSupport.setField(limsRequestProcessor, "maxConcurrentManifestFetches", 10);
+        // every manifest is fetched from the stub so that only request assembly is measured
+        SampleManifestCache sampleManifestCache = new SampleManifestCache();
+        BenchmarkSupport.setField(sampleManifestCache, "enabled", Boolean.FALSE);
+        BenchmarkSupport.setField(limsRequestProcessor, "sampleManifestCache", sampleManifestCache);
+        BenchmarkSupport.setField(limsRequestProcessor, "limsRestUtil",
+                new StubLimsRequestUtil(benchmarkData, sampleCount, sampleManifestBatchSize));
+    }
+
+    @Benchmark
+    public Map<String, Object> processRequest() throws Exception {
+        return limsRequestProcessor.process(BenchmarkData.getRequestId(0));
+    }
+}
@@ -0,0 +1,45 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks reading the samples from a LIMS request samples response.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class LimsRequestUtilBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    private int sampleCount;
+
+    private Map<String, Object> requestSamplesResponse;
+    private LimsRequestUtil limsRequestUtil;
+
+    @Setup
+    public void setup() throws Exception {
+        this.requestSamplesResponse = new BenchmarkData().getLimsRequestSamplesResponse(
+                BenchmarkData.getRequestId(0), sampleCount, true);
+        this.limsRequestUtil = new LimsRequestUtil();
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Object>> getSamplesFromRequestResponse() {
+        return limsRequestUtil.getSamplesFromRequestResponse(requestSamplesResponse);
+    }
+}
@@ -0,0 +1,53 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkData;
+
+/**
+ * LimsRequestUtil that returns synthetic responses without calling LimsRest.
+ * Responses are built on every call since the processor modifies them.
+ */
+public class StubLimsRequestUtil extends LimsRequestUtil {
+    private final BenchmarkData benchmarkData;
+    private final int sampleCount;
+    private final int sampleManifestBatchSize;
+
+    public StubLimsRequestUtil(BenchmarkData benchmarkData, int sampleCount, int sampleManifestBatchSize) {
+        this.benchmarkData = benchmarkData;
+        this.sampleCount = sampleCount;
+        this.sampleManifestBatchSize = sampleManifestBatchSize;
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getLimsRequestSamples(String requestId) {
+        return CompletableFuture.completedFuture(
+                benchmarkData.getLimsRequestSamplesResponse(requestId, sampleCount, true));
+    }
+
+    @Override
+    public CompletableFuture<List<Object>> getSampleManifest(String sampleId) {
+        return CompletableFuture.completedFuture(
+                Collections.singletonList(benchmarkData.getSampleManifest(sampleId)));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Object>> getSampleManifests(List<String> sampleIds) {
+        Map<String, Object> sampleManifests = new HashMap<>();
+        for (String sampleId : sampleIds) {
+            sampleManifests.put(sampleId, benchmarkData.getSampleManifest(sampleId));
+        }
+        return CompletableFuture.completedFuture(sampleManifests);
+    }
+
+    @Override
+    public Integer getSampleManifestBatchSize() {
+        return sampleManifestBatchSize;
+    }
+
+    @Override
+    public void updateLimsRequestErrors(String requestId, String error) {}
+}
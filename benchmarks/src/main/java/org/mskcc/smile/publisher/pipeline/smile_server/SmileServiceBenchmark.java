@@ -0,0 +1,86 @@
+package org.mskcc.smile.publisher.pipeline.smile_server;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkData;
+import org.mskcc.smile.publisher.benchmarks.BenchmarkSupport;
+import org.mskcc.smile.publisher.pipeline.PipelinedPublisher;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.mskcc.smile.publisher.pipeline.sink.NoopPublisherSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parsing, filtering and publishing a chunk of SMILE requests. Half
+ * of the requests in the chunk are non-CMO requests. Messages are published to
+ * an in-memory gateway.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class SmileServiceBenchmark {
+    private static final int CHUNK_SIZE = 10;
+
+    @Param({"10", "100", "1000", "10000"})
+    private int sampleCount;
+
+    @Param({"1", "4"})
+    private int maxInFlight;
+
+    private byte[] smileRequestsResponse;
+    private List<SmileRequestEnvelope> requests;
+    private SmileServiceReader smileServiceReader;
+    private SmileServiceWriter smileServiceWriter;
+    private PipelinedPublisher pipelinedPublisher;
+    private final NoopPublisherSink publisherSink = new NoopPublisherSink();
+
+    @Setup
+    public void setup() throws Exception {
+        this.smileRequestsResponse = new BenchmarkData().getSmileRequestsResponse(CHUNK_SIZE, sampleCount);
+        this.requests = SmileRequestEnvelope.fromJsonArray(smileRequestsResponse);
+        PublisherMetrics publisherMetrics = BenchmarkSupport.newPublisherMetrics();
+        this.pipelinedPublisher = BenchmarkSupport.newPipelinedPublisher(maxInFlight, publisherMetrics);
+
+        this.smileServiceReader = new SmileServiceReader();
+
+        this.smileServiceWriter = new SmileServiceWriter();
+        BenchmarkSupport.setField(smileServiceWriter, "verbose", Boolean.FALSE);
+        BenchmarkSupport.setField(smileServiceWriter, "publisherSink", publisherSink);
+        BenchmarkSupport.setField(smileServiceWriter, "pipelinedPublisher", pipelinedPublisher);
+        BenchmarkSupport.setField(smileServiceWriter, "CMO_NEW_REQ_TOPIC", "BENCHMARK.new-request");
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipelinedPublisher.shutdown();
+    }
+
+    @Benchmark
+    public List<SmileRequestEnvelope> parseResponse() throws Exception {
+        return SmileRequestEnvelope.fromJsonArray(smileRequestsResponse);
+    }
+
+    @Benchmark
+    public List<SmileRequestEnvelope> filterNonCMORequests() {
+        return smileServiceReader.filterNonCMORequests(requests);
+    }
+
+    @Benchmark
+    public long writeChunk() throws Exception {
+        smileServiceWriter.write(requests);
+        return publisherSink.getMessageCount();
+    }
+}
@@ -0,0 +1,323 @@
+package org.mskcc.smile.publisher;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestUtil;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.explore.JobExplorer;
+
+/**
+ * Publisher command line options. Validates the options given and resolves the job
+ * they launch and its job parameters, whether given on the command line or in a job
+ * launch requested from the publisher daemon.
+ */
+public class PublisherJobOptions {
+    private final CommandLine commandLine;
+    private String jobName;
+    private JobParameters jobParameters;
+
+    private static final Log LOG = LogFactory.getLog(PublisherJobOptions.class);
+
+    /**
+     * Thrown if the options given are invalid. The exit status is 1 if the options
+     * cannot be used together and 2 if an option value is invalid.
+     */
+    public static class InvalidJobOptionsException extends Exception {
+        private final int exitStatus;
+
+        public InvalidJobOptionsException(String message, int exitStatus) {
+            super(message);
+            this.exitStatus = exitStatus;
+        }
+
+        public int getExitStatus() {
+            return exitStatus;
+        }
+    }
+
+    private PublisherJobOptions(CommandLine commandLine) {
+        this.commandLine = commandLine;
+    }
+
+    /**
+     * Parses and validates the given options and resolves the job they launch, unless
+     * help or daemon mode is requested.
+     * @param args
+     * @param jobExplorer - used to look up the job execution to restart
+     * @return PublisherJobOptions
+     * @throws InvalidJobOptionsException
+     */
+    public static PublisherJobOptions parse(String[] args, JobExplorer jobExplorer)
+            throws InvalidJobOptionsException {
+        PublisherJobOptions jobOptions;
+        try {
+            jobOptions = new PublisherJobOptions(new DefaultParser().parse(getOptions(), args));
+        } catch (ParseException ex) {
+            throw new InvalidJobOptionsException(ex.getMessage(), 1);
+        }
+        if (jobOptions.isDaemon()) {
+            if (jobOptions.commandLine.getOptions().length > 1) {
+                throw new InvalidJobOptionsException("Cannot use '--daemon' with any other options, "
+                        + "job options are posted to the daemon", 1);
+            }
+        } else if (!jobOptions.isHelp()) {
+            jobOptions.validate();
+            jobOptions.resolveJob(jobExplorer);
+        }
+        return jobOptions;
+    }
+
+    /**
+     * Returns the job launched by the given command line options if it is known before
+     * the application context is started, so that only that job's beans are created.
+     * Returns null for help and daemon runs, which launch no job or any job, for
+     * restarts, whose job is looked up in the job repository, and for invalid options,
+     * which are reported when they are parsed again once the context has started.
+     * @param args
+     * @return String
+     */
+    public static String getCommandLineJobName(String[] args) {
+        PublisherJobOptions jobOptions;
+        try {
+            jobOptions = new PublisherJobOptions(new DefaultParser().parse(getOptions(), args));
+            if (jobOptions.isDaemon() || jobOptions.isHelp() || jobOptions.commandLine.hasOption("x")) {
+                return null;
+            }
+            jobOptions.validate();
+        } catch (ParseException | InvalidJobOptionsException ex) {
+            return null;
+        }
+        return jobOptions.getLaunchedJobName();
+    }
+
+    /**
+     * Returns true if help is requested or no job options are given.
+     * @return Boolean
+     */
+    public Boolean isHelp() {
+        return commandLine.hasOption("h")
+                || (!commandLine.hasOption("r") && !commandLine.hasOption("m")
+                && !commandLine.hasOption("s") && !commandLine.hasOption("f")
+                && !commandLine.hasOption("j") && !commandLine.hasOption("x")
+                && !commandLine.hasOption("y") && !commandLine.hasOption("d"));
+    }
+
+    public Boolean isDaemon() {
+        return commandLine.hasOption("d");
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public JobParameters getJobParameters() {
+        return jobParameters;
+    }
+
+    private void validate() throws InvalidJobOptionsException {
+        // check that command line options entered are valid
+        if (commandLine.hasOption("x") && (commandLine.hasOption("r") || commandLine.hasOption("m")
+                || commandLine.hasOption("s") || commandLine.hasOption("f")
+                || commandLine.hasOption("j") || commandLine.hasOption("y"))) {
+            throw new InvalidJobOptionsException("Cannot use '--restart_execution_id' with any other "
+                    + "job options", 1);
+        } else if (commandLine.hasOption("y") && (commandLine.hasOption("r") || commandLine.hasOption("e")
+                || commandLine.hasOption("m") || commandLine.hasOption("f")
+                || commandLine.hasOption("j"))) {
+            throw new InvalidJobOptionsException("Cannot use '--sync' with '--request_ids', '--end_date', "
+                    + "'--smile_service_mode', '--publisher_filename' or '--json_filename'", 1);
+        } else if (commandLine.hasOption("r") && (commandLine.hasOption("s")
+                || commandLine.hasOption("e"))) {
+            throw new InvalidJobOptionsException("Cannot use '--request_ids with '--start_date' or "
+                    + "'--end_date'", 1);
+        } else if (commandLine.hasOption("f") && (commandLine.hasOption("r")
+                || (commandLine.hasOption("s") || commandLine.hasOption("e"))
+                || commandLine.hasOption("m"))) {
+            throw new InvalidJobOptionsException("Cannot use '--publisher_filename' with '--request_ids' or"
+                    + "'--start_date | --end_date' or '--smile_service_mode'", 1);
+        } else if (commandLine.hasOption("c") && (commandLine.hasOption("f")
+                || commandLine.hasOption("m"))) {
+            throw new InvalidJobOptionsException("Cannot use --cmo_requests option with "
+                    + "--publisher_filename or --smile_service_mode or --json_filename", 1);
+        } else if (commandLine.hasOption("m") && !commandLine.hasOption("r")) {
+            throw new InvalidJobOptionsException("Must run '-m' option with '-r'", 1);
+        } else if (commandLine.hasOption("j") && !commandLine.hasOption("t")) {
+            throw new InvalidJobOptionsException("Must run --json_filename option with --topic", 1);
+        }
+    }
+
+    /**
+     * Returns the job launched by the options given, other than a restart.
+     * @return String
+     */
+    private String getLaunchedJobName() {
+        if (commandLine.hasOption("y")) {
+            return BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB;
+        } else if (commandLine.hasOption("m") && commandLine.hasOption("r")) {
+            return BatchConfiguration.SMILE_SERVICE_PUBLISHER_JOB;
+        } else if (commandLine.hasOption("r") || commandLine.hasOption("s")) {
+            return BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB;
+        } else if (commandLine.hasOption("f")) {
+            return BatchConfiguration.FILE_PUBLISHER_JOB;
+        } else if (commandLine.hasOption("j")) {
+            return BatchConfiguration.JSON_FILE_PUBLISHER_JOB;
+        }
+        return null;
+    }
+
+    private void resolveJob(JobExplorer jobExplorer) throws InvalidJobOptionsException {
+        JobParametersBuilder jobParamsBuilder = new JobParametersBuilder();
+        jobName = getLaunchedJobName();
+        if (commandLine.hasOption("x")) {
+            // restart a failed job execution with the job parameters it was launched with
+            JobExecution failedExecution = getRestartableJobExecution(jobExplorer,
+                    commandLine.getOptionValue("x"));
+            jobName = failedExecution.getJobInstance().getJobName();
+            jobParamsBuilder = new JobParametersBuilder(failedExecution.getJobParameters());
+            LOG.info("Restarting " + jobName + " from job execution: " + failedExecution.getId());
+        } else if (commandLine.hasOption("y")) {
+            // start date is only used if no sync has completed yet
+            if (commandLine.hasOption("s")) {
+                validateProvidedDates(commandLine.getOptionValue("s"), null);
+            }
+            jobParamsBuilder.addString("syncMode", Boolean.TRUE.toString())
+                .addString("startDate", commandLine.getOptionValue("s"))
+                .addString("cmoRequestsFilter", String.valueOf(commandLine.hasOption("c")))
+                .addString("refreshManifests", String.valueOf(commandLine.hasOption("n")));
+        } else if (commandLine.hasOption("m") && commandLine.hasOption("r")) {
+            jobParamsBuilder.addString("requestIds", commandLine.getOptionValue("r"))
+                    .addString("cmoRequestsFilter", String.valueOf(commandLine.hasOption("c")));
+        } else if (commandLine.hasOption("r") || commandLine.hasOption("s")) {
+            // validatate format for start date and end date (if applicable)
+            if (commandLine.hasOption("s")) {
+                validateProvidedDates(commandLine.getOptionValue("s"), commandLine.getOptionValue("e"));
+            }
+            // set up job params for lims request publisher job
+            jobParamsBuilder.addString("requestIds", commandLine.getOptionValue("r"))
+                .addString("startDate", commandLine.getOptionValue("s"))
+                .addString("endDate", commandLine.getOptionValue("e"))
+                .addString("cmoRequestsFilter", String.valueOf(commandLine.hasOption("c")))
+                .addString("igoSampleIds", commandLine.getOptionValue("i"))
+                .addString("refreshManifests", String.valueOf(commandLine.hasOption("n")));
+        } else if (commandLine.hasOption("f")) {
+            jobParamsBuilder.addString("publisherFilename", commandLine.getOptionValue("f"));
+        } else if (commandLine.hasOption("j")) {
+            jobParamsBuilder.addString("jsonFilename", commandLine.getOptionValue("j"))
+                    .addString("publisherTopic", commandLine.getOptionValue("t"));
+        }
+        if (!commandLine.hasOption("x")) {
+            // verbose mode
+            jobParamsBuilder.addString("verbose", String.valueOf(commandLine.hasOption("v")))
+                    .addLong("launchTimestamp", System.currentTimeMillis());
+        }
+        jobParameters = jobParamsBuilder.toJobParameters();
+    }
+
+    /**
+     * Returns the failed or stopped job execution for the given execution id.
+     * @param jobExplorer
+     * @param executionId
+     * @return JobExecution
+     * @throws InvalidJobOptionsException if the job execution does not exist or cannot be restarted
+     */
+    private static JobExecution getRestartableJobExecution(JobExplorer jobExplorer, String executionId)
+            throws InvalidJobOptionsException {
+        JobExecution jobExecution;
+        try {
+            jobExecution = jobExplorer.getJobExecution(Long.valueOf(executionId));
+        } catch (NumberFormatException ex) {
+            throw new InvalidJobOptionsException("Job execution id must be a number: " + executionId, 2);
+        }
+        if (jobExecution == null) {
+            throw new InvalidJobOptionsException("No job execution found with id: " + executionId, 2);
+        }
+        if (!jobExecution.getStatus().equals(BatchStatus.FAILED)
+                && !jobExecution.getStatus().equals(BatchStatus.STOPPED)) {
+            throw new InvalidJobOptionsException("Job execution " + executionId
+                    + " cannot be restarted, status is: " + jobExecution.getStatus(), 2);
+        }
+        return jobExecution;
+    }
+
+    /**
+     * Validate the start and end dates provided if applicable.
+     * @param startDate
+     * @param endDate
+     * @throws InvalidJobOptionsException
+     */
+    private static void validateProvidedDates(String startDate, String endDate)
+            throws InvalidJobOptionsException {
+        // the shared date format is not thread safe and may be in use by a running job
+        SimpleDateFormat dateFormat = new SimpleDateFormat(LimsRequestUtil.DATE_FORMAT.toPattern());
+        Date startTimestamp;
+        Date endTimestamp;
+        // parse start date
+        try {
+            startTimestamp = dateFormat.parse(startDate);
+        } catch (java.text.ParseException ex) {
+            throw new InvalidJobOptionsException("Error parsing start date - must be provided in format: "
+                    + "YYYY/MM/DD", 2);
+        }
+        // parse end date if provided
+        if (endDate != null) {
+            try {
+                endTimestamp = dateFormat.parse(endDate);
+            } catch (java.text.ParseException ex) {
+                throw new InvalidJobOptionsException("Error parsing end date - must be provided in format: "
+                        + "YYYY/MM/DD", 2);
+            }
+            // also check that end timestamp occurs after start timestamp
+            if (endTimestamp.before(startTimestamp)) {
+                throw new InvalidJobOptionsException("End date provided must occur after the start date "
+                        + "provided.", 2);
+            }
+        }
+    }
+
+    /**
+     * Returns the publisher command line options.
+     * @return Options
+     */
+    public static Options getOptions() {
+        Options options = new Options();
+        options.addOption("h", "help", false, "shows this help document and quits.")
+                .addOption("r", "request_ids", true, "Comma-separated list of request ids to fetch "
+                + "data for from LimsRest [REQUEST IDS MODE]")
+                .addOption("s", "start_date", true, "Start date [YYYY/MM/DD], fetch requests from "
+                        + "LimsRest beginning from the given start date [START/END DATE MODE]")
+                .addOption("e", "end_date", true, "End date [YYYY/MM/DD]. Fetch requests from LimsRest "
+                        + "between the start and end dates provided. [OPTIONAL, START/END DATE MODE]")
+                .addOption("c", "cmo_requests", false, "Filter LIMS requests by CMO requests only "
+                        + "[OPTIONAL, START/END MODE & REQUEST IDS MODE]")
+                .addOption("f", "publisher_filename", true, "Input publisher filename [FILE READING MODE]")
+                .addOption("m", "smile_service_mode", false, "Runs in Smile Service mode")
+                .addOption("j", "json_filename", true, "Publishes contents from provided JSON file, "
+                        + "one message per element of a top-level JSON array or per line of "
+                        + "newline-delimited JSON. [JSON FILE READING MODE]")
+                .addOption("t", "topic", true, "Topic to publish to when running in JSON FILE READING MODE")
+                .addOption("i", "igo_sample_ids", true, "IGO sample IDs to filter request by "
+                        + "when fetching data")
+                .addOption("n", "refresh_manifests", false, "Fetches every sample manifest from LimsRest "
+                        + "instead of using cached sample manifests [OPTIONAL, LIMS REQUEST MODES]")
+                .addOption("v", "verbose", false, "Verbose mode. Prints NATS message body to sysout.")
+                .addOption("x", "restart_execution_id", true, "Restarts a failed job execution from its "
+                        + "last committed chunk, using the job parameters it was launched with "
+                        + "[RESTART MODE]")
+                .addOption("y", "sync", false, "Publishes LIMS requests delivered since the last sync "
+                        + "that are new or have been delivered again. The start date is required for "
+                        + "the first sync only [SYNC MODE]")
+                .addOption("d", "daemon", false, "Keeps running and launches the jobs whose options are "
+                        + "posted as a JSON array to the local daemon endpoint [DAEMON MODE]");
+        return options;
+    }
+}
@@ -0,0 +1,247 @@
+package org.mskcc.smile.publisher.daemon;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.PublisherJobOptions;
+import org.mskcc.smile.publisher.PublisherJobOptions.InvalidJobOptionsException;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionException;
+import org.springframework.batch.core.explore.JobExplorer;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Long-running publisher mode that keeps the application context, and with it the
+ * LimsRest and SMILE http clients, the NATS connection and the manifest cache, warm
+ * between job runs. Jobs are launched by posting their command line options as a JSON
+ * array to the local http endpoint, e.g. ["-r", "12345_A", "-c"], and run on async job
+ * launchers. The launch responds with the job execution id as soon as the job is
+ * started, its status can then be polled. LIMS request jobs run one at a time since
+ * they share the LimsRest error report, retry and load control state, which is reset
+ * when each of them starts. The other jobs run concurrently with them and each other.
+ *
+ * <p>POST /jobs - launches a job, responds 202 with the job execution or 400 if the
+ * options are invalid<br>
+ * GET /jobs/{id} - returns a job execution's status<br>
+ * GET /health - returns the number of jobs running
+ */
+@Component
+public class PublisherDaemon {
+    public static final String JOBS_ENDPOINT = "/jobs";
+    public static final String HEALTH_ENDPOINT = "/health";
+
+    // the endpoint has no authentication so it only listens on localhost by default
+    @Value("${daemon.host:localhost}")
+    private String daemonHost;
+
+    @Value("${daemon.port:8089}")
+    private Integer daemonPort;
+
+    // jobs other than LIMS request jobs launched while this many are running wait
+    // for one of them to finish
+    @Value("${daemon.max_concurrent_jobs:4}")
+    private Integer maxConcurrentJobs;
+
+    @Autowired
+    private ConfigurableApplicationContext applicationContext;
+
+    @Autowired
+    private JobRepository jobRepository;
+
+    @Autowired
+    private JobExplorer jobExplorer;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private ThreadPoolTaskExecutor limsJobExecutor;
+    private SimpleJobLauncher limsJobLauncher;
+    private ThreadPoolTaskExecutor jobExecutor;
+    private SimpleJobLauncher jobLauncher;
+
+    private static final Log LOG = LogFactory.getLog(PublisherDaemon.class);
+
+    /**
+     * Starts the http endpoint and the async job launchers.
+     * @throws Exception
+     */
+    public void start() throws Exception {
+        this.limsJobExecutor = newJobExecutor("daemon-lims-job-", 1);
+        this.limsJobLauncher = newJobLauncher(limsJobExecutor);
+        this.jobExecutor = newJobExecutor("daemon-job-", maxConcurrentJobs);
+        this.jobLauncher = newJobLauncher(jobExecutor);
+
+        // requests are handled on the server's dispatcher thread, one at a time, which
+        // keeps job repository writes for launches from contending with each other
+        this.server = HttpServer.create(new InetSocketAddress(daemonHost, daemonPort), 0);
+        server.createContext(JOBS_ENDPOINT, this::handleJobs);
+        server.createContext(HEALTH_ENDPOINT, this::handleHealth);
+        server.start();
+        // registered here rather than with @EventListener, which would create this bean
+        // on shutdown when beans are lazily initialized and the daemon was never started
+        applicationContext.addApplicationListener((ApplicationListener<ContextClosedEvent>) event -> stop());
+        LOG.info("Publisher daemon listening on http://" + daemonHost + ":"
+                + server.getAddress().getPort() + JOBS_ENDPOINT);
+    }
+
+    /**
+     * Stops accepting job launches and waits for the running jobs to finish. This
+     * is done when the context starts closing, before the beans the jobs use are
+     * destroyed.
+     */
+    private void stop() {
+        server.stop(0);
+        LOG.info("Publisher daemon stopped, waiting for "
+                + (limsJobExecutor.getActiveCount() + jobExecutor.getActiveCount())
+                + " running jobs to finish");
+        limsJobExecutor.shutdown();
+        jobExecutor.shutdown();
+    }
+
+    private ThreadPoolTaskExecutor newJobExecutor(String threadNamePrefix, Integer poolSize) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        // let running jobs finish on shutdown so that they are not left marked as running
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(Integer.MAX_VALUE);
+        executor.initialize();
+        return executor;
+    }
+
+    private SimpleJobLauncher newJobLauncher(ThreadPoolTaskExecutor executor) throws Exception {
+        SimpleJobLauncher launcher = new SimpleJobLauncher();
+        launcher.setJobRepository(jobRepository);
+        launcher.setTaskExecutor(executor);
+        launcher.afterPropertiesSet();
+        return launcher;
+    }
+
+    private void handleJobs(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            if (path.equals(JOBS_ENDPOINT) || path.equals(JOBS_ENDPOINT + "/")) {
+                if (!exchange.getRequestMethod().equals("POST")) {
+                    respond(exchange, 405, error("Job launches must be POSTed"));
+                    return;
+                }
+                launchJob(exchange);
+            } else {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    respond(exchange, 405, error("Job executions can only be read"));
+                    return;
+                }
+                getJobExecution(exchange, path.substring(JOBS_ENDPOINT.length() + 1));
+            }
+        } catch (Exception e) {
+            LOG.error("Error handling publisher daemon request: " + exchange.getRequestURI(), e);
+            respond(exchange, 500, error(e.getMessage()));
+        }
+    }
+
+    private void launchJob(HttpExchange exchange) throws Exception {
+        String[] args;
+        try (InputStream body = exchange.getRequestBody()) {
+            args = mapper.readValue(body, String[].class);
+        } catch (IOException e) {
+            respond(exchange, 400, error("Expected a JSON array of job options: " + e.getMessage()));
+            return;
+        }
+        PublisherJobOptions jobOptions;
+        try {
+            jobOptions = PublisherJobOptions.parse(args, jobExplorer);
+        } catch (InvalidJobOptionsException e) {
+            respond(exchange, 400, error(e.getMessage()));
+            return;
+        }
+        if (jobOptions.isHelp() || jobOptions.isDaemon()) {
+            respond(exchange, 400, error("Expected the options of a job to launch, got: "
+                    + String.join(" ", args)));
+            return;
+        }
+        SimpleJobLauncher launcher = jobOptions.getJobName()
+                .equals(BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB) ? limsJobLauncher : jobLauncher;
+        JobExecution jobExecution;
+        try {
+            jobExecution = launcher.run(applicationContext.getBean(jobOptions.getJobName(), Job.class),
+                    jobOptions.getJobParameters());
+        } catch (JobExecutionException e) {
+            respond(exchange, 409, error(e.getMessage()));
+            return;
+        }
+        LOG.info("Launched " + jobOptions.getJobName() + " with options: " + String.join(" ", args)
+                + ", job execution id: " + jobExecution.getId());
+        respond(exchange, 202, toMap(jobExecution));
+    }
+
+    private void getJobExecution(HttpExchange exchange, String executionId) throws IOException {
+        JobExecution jobExecution = null;
+        try {
+            jobExecution = jobExplorer.getJobExecution(Long.valueOf(executionId));
+        } catch (NumberFormatException e) {
+            // responded to below as unknown
+        }
+        if (jobExecution == null) {
+            respond(exchange, 404, error("No job execution found with id: " + executionId));
+            return;
+        }
+        respond(exchange, 200, toMap(jobExecution));
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        Map<String, Object> health = new LinkedHashMap<>();
+        health.put("status", "UP");
+        health.put("runningJobs", limsJobExecutor.getActiveCount() + jobExecutor.getActiveCount());
+        health.put("queuedJobs", limsJobExecutor.getThreadPoolExecutor().getQueue().size()
+                + jobExecutor.getThreadPoolExecutor().getQueue().size());
+        respond(exchange, 200, health);
+    }
+
+    private Map<String, Object> toMap(JobExecution jobExecution) {
+        Map<String, Object> execution = new LinkedHashMap<>();
+        execution.put("jobExecutionId", jobExecution.getId());
+        execution.put("jobName", jobExecution.getJobInstance().getJobName());
+        execution.put("status", jobExecution.getStatus().toString());
+        execution.put("exitCode", jobExecution.getExitStatus().getExitCode());
+        execution.put("exitDescription", jobExecution.getExitStatus().getExitDescription());
+        execution.put("startTime", jobExecution.getStartTime());
+        execution.put("endTime", jobExecution.getEndTime());
+        execution.put("readCount", jobExecution.getStepExecutions().stream()
+                .mapToInt(stepExecution -> stepExecution.getReadCount()).sum());
+        execution.put("writeCount", jobExecution.getStepExecutions().stream()
+                .mapToInt(stepExecution -> stepExecution.getWriteCount()).sum());
+        return execution;
+    }
+
+    private Map<String, Object> error(String message) {
+        return Collections.singletonMap("error", message);
+    }
+
+    private void respond(HttpExchange exchange, int status, Object body) throws IOException {
+        byte[] response = mapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().put("Content-Type", Collections.singletonList("application/json"));
+        exchange.sendResponseHeaders(status, response.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response);
+        }
+    }
+}
@@ -18,6 +18,10 @@ public class FilePublisherListener implements StepExecutionListener {
 
     @Override
     public ExitStatus afterStep(StepExecution se) {
+        long elapsedMillis = Math.max(1L, System.currentTimeMillis() - se.getStartTime().getTime());
+        LOG.info(se.getStepName() + " published " + se.getWriteCount() + " messages in "
+                + elapsedMillis + " ms (" + String.format("%.1f", se.getWriteCount() * 1000.0 / elapsedMillis)
+                + " messages/sec)");
         LOG.info("Finished publishing messages from input file...returning exit"
                 + " status 'COMPLETED'");
         return ExitStatus.COMPLETED;
@@ -1,14 +1,10 @@
 package org.mskcc.smile.publisher.pipeline;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.batch.item.ExecutionContext;
@@ -20,14 +16,39 @@ import org.springframework.batch.item.UnexpectedInputException;
 import org.springframework.beans.factory.annotation.Value;
 
 /**
- *
+ * Streams records from the input publisher file one line at a time. The byte offset
+ * and line number of the next unread line are saved to the execution context.
+ * When run as a partition of the file publisher step only records whose topic is
+ * assigned to the partition are returned.
  * @author ochoaa
  */
-public class FilePublisherReader implements ItemStreamReader<Map<String, String>> {
+public class FilePublisherReader implements ItemStreamReader<PublisherRecord> {
+    public static final String BYTE_OFFSET_KEY = "filePublisherReader.byteOffset";
+    public static final String LINE_NUMBER_KEY = "filePublisherReader.lineNumber";
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final byte TAB = '\t';
+    private static final byte NEWLINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
     @Value("#{jobParameters[publisherFilename]}")
     private String publisherFilename;
 
-    private List<Map<String, String>> messagesToPublish;
+    @Value("#{stepExecutionContext['" + TopicPartitioner.PARTITION_INDEX_KEY + "']}")
+    private Integer partitionIndex;
+
+    @Value("#{stepExecutionContext['" + TopicPartitioner.PARTITION_COUNT_KEY + "']}")
+    private Integer partitionCount;
+
+    private FileInputStream inputStream;
+    private final byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private int readBufferPosition;
+    private int readBufferLimit;
+    // reused for every line read from the input file
+    private byte[] lineBuffer = new byte[8 * 1024];
+    private int lineLength;
+    private long byteOffset;
+    private long lineNumber;
+    private long recordCount;
 
     private static final Log LOG = LogFactory.getLog(FilePublisherReader.class);
 
@@ -38,68 +59,123 @@ public class FilePublisherReader implements ItemStreamReader<Map<String, String>
         if (!publisherFile.exists()) {
             throw new RuntimeException("File does not exist: " + publisherFilename);
         }
-        // load records from input file
         try {
-            this.messagesToPublish = loadPublisherMessageRecords(publisherFile);
+            this.inputStream = new FileInputStream(publisherFile);
+            if (ec.containsKey(BYTE_OFFSET_KEY)) {
+                this.byteOffset = ec.getLong(BYTE_OFFSET_KEY);
+                this.lineNumber = ec.getLong(LINE_NUMBER_KEY, 0L);
+                inputStream.getChannel().position(byteOffset);
+                LOG.info("Resuming publishing from line " + (lineNumber + 1) + " of input file: "
+                        + publisherFilename);
+            }
         } catch (IOException ex) {
-            throw new ItemStreamException("Encountered error while loading data from input publisher file",
-                    ex);
+            throw new ItemStreamException("Encountered error while opening input publisher file", ex);
         }
     }
 
-    /**
-     * Loads records from input publisher file.
-     * @param publisherFile
-     * @return List
-     * @throws FileNotFoundException
-     * @throws IOException
-     */
-    private List<Map<String, String>> loadPublisherMessageRecords(File publisherFile)
-            throws FileNotFoundException, IOException {
-        List<Map<String, String>> filedata = new ArrayList<>();
+    @Override
+    public void update(ExecutionContext ec) throws ItemStreamException {
+        ec.putLong(BYTE_OFFSET_KEY, byteOffset);
+        ec.putLong(LINE_NUMBER_KEY, lineNumber);
+    }
 
-        FileReader reader = new FileReader(publisherFile);
-        BufferedReader buff = new BufferedReader(reader);
-        String line = buff.readLine();
-        int lineCount = 1;
+    @Override
+    public void close() throws ItemStreamException {
+        if (inputStream == null) {
+            return;
+        }
+        try {
+            inputStream.close();
+        } catch (IOException ex) {
+            throw new ItemStreamException("Encountered error while closing input publisher file", ex);
+        }
+        LOG.info("Read " + recordCount + " records" + getPartitionLabel() + " from input file: "
+                + publisherFilename);
+    }
 
-        // keep reading until end of file
-        while (line != null) {
-            String[] parts = line.split("\t");
-            // simple sanity checking, make sure there are 3 elements in split line
-            if (parts.length != 3) {
-                LOG.error("Line number " + String.valueOf(lineCount) + " is not expected size (3),"
-                        + "actual size: " + String.valueOf(parts.length)
+    @Override
+    public PublisherRecord read() throws Exception, UnexpectedInputException,
+            ParseException, NonTransientResourceException {
+        while (readLine()) {
+            lineNumber++;
+            // simple sanity checking, make sure there are 3 tab-separated columns in line,
+            // ignoring trailing empty columns as String.split("\t") does
+            int columnsEnd = lineLength;
+            while (columnsEnd > 0 && lineBuffer[columnsEnd - 1] == TAB) {
+                columnsEnd--;
+            }
+            int firstTab = indexOfTab(0, columnsEnd);
+            int secondTab = (firstTab < 0) ? -1 : indexOfTab(firstTab + 1, columnsEnd);
+            if (secondTab < 0 || indexOfTab(secondTab + 1, columnsEnd) >= 0) {
+                String line = new String(lineBuffer, 0, lineLength, StandardCharsets.UTF_8);
+                LOG.error("Line number " + String.valueOf(lineNumber) + " is not expected size (3),"
+                        + "actual size: " + String.valueOf(line.split("\t").length)
                         + "\n\tline: " + line);
                 throw new RuntimeException("Exception during reading of file: " + publisherFilename);
             }
             // publisher topic is in column 2, message is column 3
-            Map<String, String> record = new HashMap<>();
-            record.put("topic", parts[1]);
-            record.put("message", parts[2]);
-            filedata.add(record);
-            lineCount++;
-            line = buff.readLine();
+            String topic = new String(lineBuffer, firstTab + 1, secondTab - firstTab - 1,
+                    StandardCharsets.UTF_8);
+            if (partitionCount != null && partitionCount > 1
+                    && TopicPartitioner.getPartitionIndex(topic, partitionCount) != partitionIndex) {
+                continue;
+            }
+            String message = new String(lineBuffer, secondTab + 1, columnsEnd - secondTab - 1,
+                    StandardCharsets.UTF_8);
+            recordCount++;
+            return new PublisherRecord(topic, message);
         }
-        reader.close();
-
-        LOG.info("Loaded " + filedata.size() + " records from input file: " + publisherFilename);
-        return filedata;
+        return null;
     }
 
-    @Override
-    public void update(ExecutionContext ec) throws ItemStreamException {}
+    /**
+     * Reads the next line of the input file into the line buffer, without the line terminator.
+     * @return boolean - false if the end of the file has been reached
+     * @throws IOException
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        boolean bytesRead = false;
+        while (true) {
+            if (readBufferPosition == readBufferLimit) {
+                readBufferLimit = inputStream.read(readBuffer);
+                readBufferPosition = 0;
+                if (readBufferLimit <= 0) {
+                    readBufferLimit = 0;
+                    break;
+                }
+            }
+            bytesRead = true;
+            byte b = readBuffer[readBufferPosition++];
+            byteOffset++;
+            if (b == NEWLINE) {
+                break;
+            }
+            if (lineLength == lineBuffer.length) {
+                lineBuffer = Arrays.copyOf(lineBuffer, lineBuffer.length * 2);
+            }
+            lineBuffer[lineLength++] = b;
+        }
+        if (lineLength > 0 && lineBuffer[lineLength - 1] == CARRIAGE_RETURN) {
+            lineLength--;
+        }
+        return bytesRead;
+    }
 
-    @Override
-    public void close() throws ItemStreamException {}
+    private String getPartitionLabel() {
+        if (partitionCount == null || partitionCount <= 1) {
+            return "";
+        }
+        return " for partition " + partitionIndex + " of " + partitionCount;
+    }
 
-    @Override
-    public Map<String, String> read() throws Exception, UnexpectedInputException,
-            ParseException, NonTransientResourceException {
-        if (!messagesToPublish.isEmpty()) {
-            return messagesToPublish.remove(0);
+    private int indexOfTab(int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < toIndex; i++) {
+            if (lineBuffer[i] == TAB) {
+                return i;
+            }
         }
-        return null;
+        return -1;
     }
 
 }
@@ -1,10 +1,11 @@
 package org.mskcc.smile.publisher.pipeline;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.mskcc.cmo.messaging.Gateway;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemStreamWriter;
@@ -14,9 +15,12 @@ import org.springframework.beans.factory.annotation.Autowired;
  *
  * @author ochoaa
  */
-public class FilePublisherWriter implements ItemStreamWriter<Map<String, String>> {
+public class FilePublisherWriter implements ItemStreamWriter<PublisherRecord> {
     @Autowired
-    private Gateway messagingGateway;
+    private PublisherSink publisherSink;
+
+    @Autowired
+    private PipelinedPublisher pipelinedPublisher;
 
     private static final Log LOG = LogFactory.getLog(FilePublisherWriter.class);
 
@@ -30,11 +34,19 @@ public class FilePublisherWriter implements ItemStreamWriter<Map<String, String>
     public void close() throws ItemStreamException {}
 
     @Override
-    public void write(List<? extends Map<String, String>> messagesToPublish) throws Exception {
-        for (Map<String, String> record : messagesToPublish) {
-            LOG.debug("Publishing message: " + record.get("topic") + ", " + record.get("message"));
-            messagingGateway.publish(record.get("topic"), record.get("message"));
+    public void write(List<? extends PublisherRecord> messagesToPublish) throws Exception {
+        // messages on the same topic are published in file order, one at a time, so only
+        // messages on different topics are in flight together
+        List<CompletableFuture<Void>> publishes = new ArrayList<>();
+        for (PublisherRecord record : messagesToPublish) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Publishing message: " + record.getTopic() + ", " + record.getMessage());
+            }
+            publishes.add(pipelinedPublisher.submit(record.getTopic(),
+                    () -> publisherSink.publish(record.getTopic(), record.getMessage())));
         }
+        // chunk is only committed once every message in it has been published
+        pipelinedPublisher.awaitAll(publishes);
     }
 
 }
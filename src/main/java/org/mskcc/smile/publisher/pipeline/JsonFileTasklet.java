@@ -1,11 +1,22 @@
 package org.mskcc.smile.publisher.pipeline;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import org.apache.commons.io.FileUtils;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.mskcc.cmo.messaging.Gateway;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
 import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
@@ -14,10 +25,22 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 /**
+ * Publishes the contents of a JSON file. If the file holds a top-level JSON array
+ * then each element is published as its own message, otherwise each top-level JSON
+ * value is, so a single JSON document is published as one message and newline
+ * delimited JSON as one message per line. The file is stream parsed and each message
+ * is read from the file as the raw bytes of its value, so memory use is bounded by
+ * the largest value rather than the file size and values are never re-encoded.
+ *
+ * <p>Messages are published in file order, one at a time, since they all go to the
+ * same topic. If 'json_file.ordered' is false then each message is published on its
+ * own and up to 'publisher.max_in_flight' messages are in flight at once, in no
+ * particular order.
  *
  * @author ochoaa
  */
 public class JsonFileTasklet implements Tasklet {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
 
     @Value("#{jobParameters[jsonFilename]}")
     private String jsonFilename;
@@ -25,8 +48,18 @@ public class JsonFileTasklet implements Tasklet {
     @Value("#{jobParameters[publisherTopic]}")
     private String publisherTopic;
 
+    // publishes are awaited in batches so the pending futures do not grow with the file
+    @Value("${json_file.publish_batch_size:1000}")
+    private Integer publishBatchSize;
+
+    @Value("${json_file.ordered:true}")
+    private Boolean publishInOrder;
+
     @Autowired
-    private Gateway messagingGateway;
+    private PublisherSink publisherSink;
+
+    @Autowired
+    private PipelinedPublisher pipelinedPublisher;
 
     private static final Log LOG = LogFactory.getLog(JsonFileTasklet.class);
 
@@ -36,11 +69,78 @@ public class JsonFileTasklet implements Tasklet {
         if (!jsonFile.exists()) {
             throw new RuntimeException("File does not exist: " + jsonFilename);
         }
-        String filedata = FileUtils.readFileToString(jsonFile, StandardCharsets.UTF_8);
-        if (filedata == null || filedata.isEmpty()) {
+        if (jsonFile.length() == 0) {
             throw new RuntimeException("Error reading filecontents from json file: " + jsonFilename);
         }
-        messagingGateway.publish(publisherTopic, filedata);
+
+        long startNanos = System.nanoTime();
+        long messageCount = 0;
+        long byteCount = 0;
+        List<CompletableFuture<Void>> publishes = new ArrayList<>();
+        // positional reads of each value do not move the channel position the parser reads from
+        try (FileChannel channel = FileChannel.open(jsonFile.toPath(), StandardOpenOption.READ);
+                InputStream input = Channels.newInputStream(channel);
+                JsonParser parser = JSON_FACTORY.createParser(input)) {
+            JsonToken token = parser.nextToken();
+            boolean isArray = (token == JsonToken.START_ARRAY);
+            if (isArray) {
+                token = parser.nextToken();
+            }
+            while (token != null && token != JsonToken.END_ARRAY) {
+                long start = parser.getTokenLocation().getByteOffset();
+                if (token.isStructStart()) {
+                    parser.skipChildren();
+                } else {
+                    parser.finishToken();
+                }
+                long end = parser.getCurrentLocation().getByteOffset();
+                String message = readSlice(channel, start, end);
+                // unordered messages each get their own ordering key so their publishes overlap
+                String orderingKey = publishInOrder ? publisherTopic : String.valueOf(messageCount);
+                publishes.add(pipelinedPublisher.submit(orderingKey,
+                        () -> publisherSink.publish(publisherTopic, message)));
+                messageCount++;
+                byteCount += (end - start);
+                sc.incrementReadCount();
+                if (publishes.size() >= publishBatchSize) {
+                    pipelinedPublisher.awaitAll(publishes);
+                    sc.incrementWriteCount(publishes.size());
+                    publishes.clear();
+                }
+                token = parser.nextToken();
+            }
+            if (isArray && token != JsonToken.END_ARRAY) {
+                throw new IOException("Unexpected end of JSON array in file: " + jsonFilename);
+            }
+        }
+        pipelinedPublisher.awaitAll(publishes);
+        sc.incrementWriteCount(publishes.size());
+
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        LOG.info(String.format("Published %d messages (%d bytes) from %s in %.2f s: "
+                + "%.1f messages/sec, %.1f bytes/sec", messageCount, byteCount, jsonFilename, seconds,
+                messageCount / seconds, byteCount / seconds));
+        if (messageCount == 0) {
+            LOG.warn("No JSON values found to publish in file: " + jsonFilename);
+        }
         return RepeatStatus.FINISHED;
     }
+
+    /**
+     * Reads the bytes between the given file offsets as a UTF-8 string.
+     * @param channel
+     * @param start
+     * @param end
+     * @return String
+     * @throws IOException
+     */
+    private String readSlice(FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file reading JSON value from: " + jsonFilename);
+            }
+        }
+        return new String(buffer.array(), StandardCharsets.UTF_8);
+    }
 }
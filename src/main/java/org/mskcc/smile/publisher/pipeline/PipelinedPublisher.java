@@ -0,0 +1,145 @@
+package org.mskcc.smile.publisher.pipeline;
+
+import io.micrometer.core.instrument.Timer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Publishes messages with a bounded window of publishes in flight. Publishes that
+ * share an ordering key are sent one after another in the order they were submitted,
+ * while publishes with different ordering keys are sent concurrently. Publishes with
+ * the same ordering key never overlap, so the window only fills up when messages are
+ * spread over at least 'publisher.max_in_flight' ordering keys.
+ * If 'publisher.max_in_flight' is 1 then messages are published synchronously
+ * on the calling thread.
+ */
+@Component
+public class PipelinedPublisher {
+    @Value("${publisher.max_in_flight:1}")
+    private Integer maxInFlight;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    private ExecutorService publishExecutor;
+    private Semaphore inFlightPermits;
+    private final Map<String, CompletableFuture<Void>> lastPublishByOrderingKey = new ConcurrentHashMap<>();
+    private final AtomicBoolean firstPublishLogged = new AtomicBoolean();
+
+    private static final Log LOG = LogFactory.getLog(PipelinedPublisher.class);
+
+    /**
+     * A single message publish.
+     */
+    @FunctionalInterface
+    public interface PublishTask {
+        void publish() throws Exception;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (maxInFlight > 1) {
+            CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("pipelined-publisher-");
+            threadFactory.setDaemon(true);
+            this.publishExecutor = Executors.newFixedThreadPool(maxInFlight, threadFactory);
+            this.inFlightPermits = new Semaphore(maxInFlight);
+            LOG.info("Publishing with up to " + maxInFlight + " messages in flight");
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (publishExecutor != null) {
+            publishExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Submits a publish. Blocks while the window of publishes in flight is full.
+     * In synchronous mode the message is published before returning and any
+     * exception thrown by the publish is rethrown.
+     * @param orderingKey
+     * @param task
+     * @return CompletableFuture - completes once the message has been published
+     * @throws Exception
+     */
+    public CompletableFuture<Void> submit(String orderingKey, PublishTask task) throws Exception {
+        if (publishExecutor == null) {
+            timePublish(task);
+            return CompletableFuture.completedFuture(null);
+        }
+        inFlightPermits.acquire();
+        String key = (orderingKey == null) ? "" : orderingKey;
+        Runnable publish = publisherMetrics.withCurrentJob(() -> runPublishTask(task));
+        CompletableFuture<Void> published = lastPublishByOrderingKey.compute(key, (k, previous) -> {
+            if (previous == null) {
+                return CompletableFuture.runAsync(publish, publishExecutor);
+            }
+            return previous.handle((result, ex) -> (Void) null)
+                    .thenRunAsync(publish, publishExecutor);
+        });
+        published.whenComplete((result, ex) -> {
+            lastPublishByOrderingKey.remove(key, published);
+            inFlightPermits.release();
+        });
+        return published;
+    }
+
+    /**
+     * Waits for all of the given publishes to complete. Rethrows the cause of the
+     * first failed publish, if any.
+     * @param publishes
+     * @throws Exception
+     */
+    public void awaitAll(List<CompletableFuture<Void>> publishes) throws Exception {
+        try {
+            CompletableFuture.allOf(publishes.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void runPublishTask(PublishTask task) {
+        try {
+            timePublish(task);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    private void timePublish(PublishTask task) throws Exception {
+        Timer.Sample sample = publisherMetrics.startTimer();
+        String outcome = "error";
+        try {
+            task.publish();
+            outcome = "success";
+            if (!firstPublishLogged.get() && firstPublishLogged.compareAndSet(false, true)) {
+                // startup cost as seen by the caller, for comparing the startup settings
+                LOG.info("First message published " + ManagementFactory.getRuntimeMXBean().getUptime()
+                        + " ms after JVM start");
+            }
+        } finally {
+            publisherMetrics.stopTimer(sample, PublisherMetrics.NATS_PUBLISH_TIMER, "outcome", outcome);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.mskcc.smile.publisher.pipeline;
+
+/**
+ * Message record read from a line of an input publisher file.
+ */
+public class PublisherRecord {
+    private final String topic;
+    private final String message;
+
+    public PublisherRecord(String topic, String message) {
+        this.topic = topic;
+        this.message = message;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
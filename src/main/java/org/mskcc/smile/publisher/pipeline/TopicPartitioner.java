@@ -0,0 +1,38 @@
+package org.mskcc.smile.publisher.pipeline;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+/**
+ * Splits the input publisher file into partitions by message topic. Every record
+ * for a given topic is assigned to the same partition so that messages on a topic
+ * are still published in file order.
+ */
+public class TopicPartitioner implements Partitioner {
+    public static final String PARTITION_INDEX_KEY = "partitionIndex";
+    public static final String PARTITION_COUNT_KEY = "partitionCount";
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        for (int i = 0; i < gridSize; i++) {
+            ExecutionContext context = new ExecutionContext();
+            context.putInt(PARTITION_INDEX_KEY, i);
+            context.putInt(PARTITION_COUNT_KEY, gridSize);
+            partitions.put("partition" + i, context);
+        }
+        return partitions;
+    }
+
+    /**
+     * Returns the partition index a topic is assigned to.
+     * @param topic
+     * @param partitionCount
+     * @return int
+     */
+    public static int getPartitionIndex(String topic, int partitionCount) {
+        return Math.floorMod(topic.hashCode(), partitionCount);
+    }
+}
@@ -1,50 +1,36 @@
 package org.mskcc.smile.publisher.pipeline.config;
 
 import java.net.MalformedURLException;
-import java.util.Map;
-import java.util.concurrent.Future;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
 import javax.sql.DataSource;
 import org.mskcc.cmo.messaging.Gateway;
-import org.mskcc.smile.publisher.pipeline.FilePublisherListener;
-import org.mskcc.smile.publisher.pipeline.FilePublisherReader;
-import org.mskcc.smile.publisher.pipeline.FilePublisherWriter;
-import org.mskcc.smile.publisher.pipeline.JsonFileTasklet;
-import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestListener;
-import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestProcessor;
-import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestReader;
-import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestWriter;
-import org.mskcc.smile.publisher.pipeline.smile_server.SmileServiceReader;
-import org.mskcc.smile.publisher.pipeline.smile_server.SmileServiceWriter;
-import org.springframework.batch.core.Job;
-import org.springframework.batch.core.Step;
-import org.springframework.batch.core.StepExecutionListener;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetricsListener;
+import org.mskcc.smile.publisher.pipeline.sink.FilePublisherSink;
+import org.mskcc.smile.publisher.pipeline.sink.NatsPublisherSink;
+import org.mskcc.smile.publisher.pipeline.sink.NoopPublisherSink;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
 import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
-import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
-import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
-import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.JobLauncher;
 import org.springframework.batch.core.launch.support.SimpleJobLauncher;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.repository.support.JobRepositoryFactoryBean;
-import org.springframework.batch.core.step.tasklet.Tasklet;
-import org.springframework.batch.integration.async.AsyncItemProcessor;
-import org.springframework.batch.integration.async.AsyncItemWriter;
-import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.ItemStreamReader;
-import org.springframework.batch.item.ItemStreamWriter;
-import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.Resource;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
 import org.springframework.jdbc.datasource.init.DataSourceInitializer;
 import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 /**
@@ -62,274 +48,50 @@ public class BatchConfiguration {
     public static final String SMILE_SERVICE_PUBLISHER_JOB = "smileServicePublisherJob";
     public static final String JSON_FILE_PUBLISHER_JOB = "jsonFilePublisherJob";
 
-    @Value("${chunk.interval:10}")
-    private Integer chunkInterval;
+    // set to the job launched from the command line so that only its beans are created,
+    // the beans of every job are created if it is not set
+    public static final String PUBLISHER_JOB_PROPERTY = "publisher.job";
 
-    @Value("${async.thread_pool_size:5}")
-    private Integer asyncThreadPoolSize;
+    // 'nats' publishes to NATS, 'file' writes messages to publisher.sink_filename, 'noop' drops them
+    @Value("${publisher.sink:nats}")
+    private String publisherSinkType;
 
-    @Value("${async.thread_pool_max:10}")
-    private Integer asyncThreadPoolMax;
-
-    @Value("${processor.thread_pool_size:5}")
-    private Integer processorThreadPoolSize;
-
-    @Value("${processor.thread_pool_max:10}")
-    private Integer processorThreadPoolMax;
-
-    @Autowired
-    public JobBuilderFactory jobBuilderFactory;
-
-    @Autowired
-    public StepBuilderFactory stepBuilderFactory;
+    @Value("${publisher.sink_filename:published_messages.txt}")
+    private String publisherSinkFilename;
 
+    // injected as a lazy proxy so that the gateway is only created if publishing to NATS
     @Autowired
+    @Lazy
     private Gateway messagingGateway;
 
-    @Bean
-    public Gateway messagingGateway() throws Exception {
-        messagingGateway.connect();
-        return messagingGateway;
-    }
-
-    /**
-     * limsRequestPublisherJob
-     * @return
-     */
-    @Bean
-    public Job limsRequestPublisherJob() {
-        return jobBuilderFactory.get(LIMS_REQUEST_PUBLISHER_JOB)
-                .start(limsRequestPublisherStep())
-                .build();
-    }
-
-    /**
-     * filePublisherJob
-     * @return
-     */
-    @Bean
-    public Job filePublisherJob() {
-        return jobBuilderFactory.get(FILE_PUBLISHER_JOB)
-                .start(filePublisherStep())
-                .build();
-    }
-
-    /**
-     * Json file reading job.
-     * @return
-     */
-    @Bean
-    public Job jsonFilePublisherJob() {
-        return jobBuilderFactory.get(JSON_FILE_PUBLISHER_JOB)
-                .start(jsonFileStep())
-                .build();
-    }
-
-    /**
-     * limsRequestPublisherStep
-     * @return
-     */
-    @Bean
-    public Step limsRequestPublisherStep() {
-        return stepBuilderFactory.get("limsRequestPublisherStep")
-                .listener(limsRequestListener())
-                .<String, Future<Map<String,Object>>>chunk(chunkInterval)
-                .reader(limsRequestReader())
-                .processor(asyncItemProcessor())
-                .writer(asyncItemWriter())
-                .build();
-    }
-
-    /**
-     * filePublisherStep
-     * @return
-     */
-    @Bean
-    public Step filePublisherStep() {
-        return stepBuilderFactory.get("filePublisherStep")
-                .listener(filePublisherListener())
-                .<Map<String, String>, Map<String, String>>chunk(10)
-                .reader(filePublisherReader())
-                .writer(filePublisherWriter())
-                .build();
-    }
-
-    /**
-     * smileServicePublisherJob
-     * @return
-     */
-    @Bean
-    public Job smileServicePublisherJob() {
-        return jobBuilderFactory.get(SMILE_SERVICE_PUBLISHER_JOB)
-                .start(smileServicePublisherStep())
-                .build();
-    }
-
-    /**
-     * smileServicePublisherStep
-     * @return
-     */
-    @Bean
-    public Step smileServicePublisherStep() {
-        return stepBuilderFactory.get("smileServicePublisherStep")
-                .<String, String>chunk(10)
-                .reader(mdbServiceReader())
-                .writer(mdbServiceWriter())
-                .build();
-    }
-
-    /**
-     * Json file reading step.
-     * @return
-     */
-    @Bean
-    public Step jsonFileStep() {
-        return stepBuilderFactory.get("jsonFileStep")
-                .tasklet(jsonFileTasklet())
-                .build();
-    }
-
-    /**
-     * Json file reading and publisher tasklet.
-     * @return
-     */
-    @Bean
-    @StepScope
-    public Tasklet jsonFileTasklet() {
-        return new JsonFileTasklet();
-    }
-
-    /**
-     * filePublisherReader
-     * @return
-     */
-    @Bean
-    @StepScope
-    public ItemStreamReader<Map<String, String>> filePublisherReader() {
-        return new FilePublisherReader();
-    }
-
-    /**
-     * filePublisherWriter
-     * @return
-     */
-    @Bean
-    @StepScope
-    public ItemStreamWriter<Map<String, String>> filePublisherWriter() {
-        return new FilePublisherWriter();
-    }
-
-    /**
-     * filePublisherListener
-     * @return
-     */
-    @Bean
-    public StepExecutionListener filePublisherListener() {
-        return new FilePublisherListener();
-    }
-
-    /**
-     * asyncLimsRequestThreadPoolTaskExecutor
-     * @return
-     */
-    @Bean(name = "asyncLimsRequestThreadPoolTaskExecutor")
-    @StepScope
-    public ThreadPoolTaskExecutor asyncLimsRequestThreadPoolTaskExecutor() {
-        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-        executor.setCorePoolSize(asyncThreadPoolSize);
-        executor.setMaxPoolSize(asyncThreadPoolMax);
-        executor.initialize();
-        return executor;
-    }
-
-    /**
-     * processorThreadPoolTaskExecutor
-     * @return
-     */
-    @Bean(name = "processorThreadPoolTaskExecutor")
-    @StepScope
-    public ThreadPoolTaskExecutor processorThreadPoolTaskExecutor() {
-        ThreadPoolTaskExecutor threadPoolTaskExecutor = new ThreadPoolTaskExecutor();
-        threadPoolTaskExecutor.setCorePoolSize(processorThreadPoolSize);
-        threadPoolTaskExecutor.setMaxPoolSize(processorThreadPoolMax);
-        threadPoolTaskExecutor.initialize();
-        return threadPoolTaskExecutor;
-    }
-
-    /**
-     * asyncItemProcessor
-     * @return
-     */
-    @Bean
-    @StepScope
-    public ItemProcessor<String, Future<Map<String, Object>>> asyncItemProcessor() {
-        AsyncItemProcessor<String, Map<String, Object>> asyncItemProcessor = new AsyncItemProcessor();
-        asyncItemProcessor.setTaskExecutor(processorThreadPoolTaskExecutor());
-        asyncItemProcessor.setDelegate(limsRequestProcessor());
-        return asyncItemProcessor;
-    }
-
-    /**
-     * limsRequestProcessor
-     * @return
-     */
-    @Bean
-    @StepScope
-    public LimsRequestProcessor limsRequestProcessor() {
-        return new LimsRequestProcessor();
-    }
-
-    /**
-     * asyncItemWriter
-     * @return
-     */
-    @Bean
-    @StepScope
-    public ItemWriter<Future<Map<String, Object>>> asyncItemWriter() {
-        AsyncItemWriter<Map<String, Object>> asyncItemWriter = new AsyncItemWriter();
-        asyncItemWriter.setDelegate(limsRequestWriter());
-        return asyncItemWriter;
-    }
-
-    /**
-     * limsRequestWriter
-     * @return
-     */
-    @Bean
-    @StepScope
-    public ItemStreamWriter<Map<String, Object>> limsRequestWriter() {
-        return new LimsRequestWriter();
-    }
-
     /**
-     * limsRequestReader
-     * @return
+     * Returns the sink that messages are published to. The messaging gateway is
+     * only connected if messages are published to NATS.
+     * @return PublisherSink
+     * @throws Exception
      */
     @Bean
-    @StepScope
-    public ItemStreamReader<String> limsRequestReader() {
-        return new LimsRequestReader();
+    public PublisherSink publisherSink() throws Exception {
+        switch (publisherSinkType.toLowerCase()) {
+            case PublisherSink.NATS:
+                return new NatsPublisherSink(messagingGateway);
+            case PublisherSink.FILE:
+                return new FilePublisherSink(Paths.get(publisherSinkFilename));
+            case PublisherSink.NOOP:
+                return new NoopPublisherSink();
+            default:
+                throw new IllegalArgumentException("Unknown publisher sink '" + publisherSinkType
+                        + "', expected one of: nats, file, noop");
+        }
     }
 
     /**
-     * limsRequestListener
+     * publisherMetricsListener
      * @return
      */
     @Bean
-    public StepExecutionListener limsRequestListener() {
-        return new LimsRequestListener();
-    }
-
-    @Bean
-    @StepScope
-    public ItemStreamWriter<String> mdbServiceWriter() {
-        return new SmileServiceWriter();
-    }
-
-    @Bean
-    @StepScope
-    public ItemStreamReader<String> mdbServiceReader() {
-        return new SmileServiceReader();
+    public PublisherMetricsListener publisherMetricsListener() {
+        return new PublisherMetricsListener();
     }
 
     // general spring batch configuration
@@ -339,37 +101,93 @@ public class BatchConfiguration {
     @Value("org/springframework/batch/core/schema-sqlite.sql")
     private Resource dataRepositorySchema;
 
-    /**
-     * Spring Batch datasource.
+    @Value("${batch.repository.reset:false}")
+    private Boolean resetJobRepository;
+
+    @Value("${batch.repository.in_memory:false}")
+    private Boolean inMemoryJobRepository;
+
+    @Value("${batch.repository.busy_timeout_ms:30000}")
+    private Integer jobRepositoryBusyTimeoutMs;
+
+    /**
+     * Spring Batch datasource. If 'batch.repository.in_memory' is set to true the job
+     * repository is kept in an in-memory database instead of 'repository.sqlite', which
+     * saves creating or checking the schema on disk but means failed job executions
+     * cannot be restarted. An in-memory SQLite database only lives as long as its
+     * connection, so a single connection is shared.
+     *
+     * <p>Jobs run concurrently by the publisher daemon each write to 'repository.sqlite'
+     * on their own connections. The database is switched to write-ahead logging so that
+     * reads do not block on a write. Transactions are begun IMMEDIATE so that they take
+     * the write lock up front: a deferred transaction that reads and then writes fails
+     * with SQLITE_BUSY at once when another connection holds the lock, whereas BEGIN
+     * IMMEDIATE waits up to 'batch.repository.busy_timeout_ms' for the other write to
+     * finish. This also keeps the job repository's id incrementers, which insert a row
+     * and then read back the max rowid, from handing out the same id twice.
      * @return DataSource
      */
     @Bean
     public DataSource dataSource() {
+        if (inMemoryJobRepository) {
+            SingleConnectionDataSource dataSource = new SingleConnectionDataSource();
+            dataSource.setDriverClassName("org.sqlite.JDBC");
+            dataSource.setUrl("jdbc:sqlite::memory:");
+            dataSource.setSuppressClose(true);
+            return dataSource;
+        }
+        Properties connectionProperties = new Properties();
+        connectionProperties.setProperty("journal_mode", "WAL");
+        connectionProperties.setProperty("busy_timeout", String.valueOf(jobRepositoryBusyTimeoutMs));
+        connectionProperties.setProperty("transaction_mode", "IMMEDIATE");
         DriverManagerDataSource dataSource = new DriverManagerDataSource();
         dataSource.setDriverClassName("org.sqlite.JDBC");
         dataSource.setUrl("jdbc:sqlite:repository.sqlite");
+        dataSource.setConnectionProperties(connectionProperties);
         return dataSource;
     }
 
     /**
-     * Spring Batch datasource initializer.
+     * Spring Batch datasource initializer. The job repository schema is only created if
+     * it does not exist yet so that failed job executions can be restarted. The existing
+     * repository is dropped and recreated if 'batch.repository.reset' is set to true.
+     * Never lazily initialized since nothing depends on it.
      * @param dataSource
      * @return DataSourceInitializer
      * @throws MalformedURLException
      */
     @Bean
+    @Lazy(false)
     public DataSourceInitializer dataSourceInitializer(DataSource dataSource) throws MalformedURLException {
         ResourceDatabasePopulator databasePopulator = new ResourceDatabasePopulator();
-        databasePopulator.addScript(dropRepositoryTables);
+        if (resetJobRepository) {
+            databasePopulator.addScript(dropRepositoryTables);
+            databasePopulator.setIgnoreFailedDrops(true);
+        }
         databasePopulator.addScript(dataRepositorySchema);
-        databasePopulator.setIgnoreFailedDrops(true);
 
         DataSourceInitializer initializer = new DataSourceInitializer();
         initializer.setDataSource(dataSource);
         initializer.setDatabasePopulator(databasePopulator);
+        initializer.setEnabled(resetJobRepository || !jobRepositoryTablesExist(dataSource));
         return initializer;
     }
 
+    /**
+     * Checks whether the Spring Batch job repository tables already exist.
+     * @param dataSource
+     * @return Boolean
+     */
+    private Boolean jobRepositoryTablesExist(DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection();
+                ResultSet tables = connection.getMetaData()
+                        .getTables(null, null, "BATCH_JOB_INSTANCE", null)) {
+            return tables.next();
+        } catch (SQLException e) {
+            return Boolean.FALSE;
+        }
+    }
+
     /**
      * Spring Batch job repository.
      * @return JobRepository
@@ -0,0 +1,185 @@
+package org.mskcc.smile.publisher.pipeline.config;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.FilePublisherListener;
+import org.mskcc.smile.publisher.pipeline.FilePublisherReader;
+import org.mskcc.smile.publisher.pipeline.FilePublisherWriter;
+import org.mskcc.smile.publisher.pipeline.PublisherRecord;
+import org.mskcc.smile.publisher.pipeline.TopicPartitioner;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetricsListener;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+
+/**
+ * Publisher file job, which publishes the records of a tab-delimited file. Only
+ * created if it is the job being launched or all jobs are.
+ */
+@Configuration
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.FILE_PUBLISHER_JOB, matchIfMissing = true)
+public class FilePublisherJobConfiguration {
+
+    private static final Log LOG = LogFactory.getLog(FilePublisherJobConfiguration.class);
+
+    @Value("${file.publisher.chunk_size:10}")
+    private Integer filePublisherChunkSize;
+
+    @Value("${file.publisher.partitions:1}")
+    private Integer filePublisherPartitions;
+
+    @Value("${publisher.max_in_flight:1}")
+    private Integer publisherMaxInFlight;
+
+    @Autowired
+    public JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    public StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    @Autowired
+    private PublisherMetricsListener publisherMetricsListener;
+
+    /**
+     * filePublisherJob
+     * @return
+     */
+    @Bean
+    public Job filePublisherJob() {
+        // records are published by partitioned worker steps if more than one partition is configured
+        Step step = (getFilePublisherPartitionCount() > 1)
+                ? filePublisherPartitionStep() : filePublisherStep();
+        return jobBuilderFactory.get(BatchConfiguration.FILE_PUBLISHER_JOB)
+                .listener(publisherMetricsListener)
+                .start(step)
+                .build();
+    }
+
+    /**
+     * filePublisherStep
+     * @return
+     */
+    @Bean
+    public Step filePublisherStep() {
+        return stepBuilderFactory.get("filePublisherStep")
+                .listener(filePublisherListener())
+                .listener((StepExecutionListener) publisherMetricsListener)
+                .<PublisherRecord, PublisherRecord>chunk(getFilePublisherChunkSize())
+                .reader(filePublisherReader())
+                .writer(filePublisherWriter())
+                .listener((ChunkListener) publisherMetricsListener)
+                .build();
+    }
+
+    /**
+     * filePublisherPartitionStep - runs the filePublisherStep over partitions of
+     * the input file, records are assigned to partitions by topic.
+     * @return
+     */
+    @Bean
+    public Step filePublisherPartitionStep() {
+        int partitionCount = getFilePublisherPartitionCount();
+        return stepBuilderFactory.get("filePublisherPartitionStep")
+                .partitioner("filePublisherStep", topicPartitioner())
+                .step(filePublisherStep())
+                .gridSize(partitionCount)
+                .taskExecutor(filePublisherPartitionTaskExecutor())
+                .build();
+    }
+
+    /**
+     * topicPartitioner
+     * @return
+     */
+    @Bean
+    public Partitioner topicPartitioner() {
+        return new TopicPartitioner();
+    }
+
+    /**
+     * filePublisherPartitionTaskExecutor
+     * @return
+     */
+    @Bean
+    public TaskExecutor filePublisherPartitionTaskExecutor() {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("file-publisher-partition-");
+        executor.setConcurrencyLimit(getFilePublisherPartitionCount());
+        executor.setTaskDecorator(publisherMetrics::withCurrentJob);
+        return executor;
+    }
+
+    /**
+     * Returns the file publisher chunk size, raised to 'publisher.max_in_flight' if it
+     * is smaller. The writer waits for every publish in a chunk before the chunk is
+     * committed, so a smaller chunk would never fill the window of publishes in flight.
+     * @return int
+     */
+    private int getFilePublisherChunkSize() {
+        if (filePublisherChunkSize < publisherMaxInFlight) {
+            LOG.info("Raising file publisher chunk size from " + filePublisherChunkSize
+                    + " to publisher.max_in_flight: " + publisherMaxInFlight);
+            return publisherMaxInFlight;
+        }
+        return filePublisherChunkSize;
+    }
+
+    /**
+     * Returns the number of file publisher partitions, defaults to the number
+     * of available processors if 'file.publisher.partitions' is less than 1.
+     * @return int
+     */
+    private int getFilePublisherPartitionCount() {
+        if (filePublisherPartitions < 1) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+        return filePublisherPartitions;
+    }
+
+    /**
+     * filePublisherReader
+     * @return
+     */
+    @Bean
+    @StepScope
+    public ItemStreamReader<PublisherRecord> filePublisherReader() {
+        return new FilePublisherReader();
+    }
+
+    /**
+     * filePublisherWriter
+     * @return
+     */
+    @Bean
+    @StepScope
+    public ItemStreamWriter<PublisherRecord> filePublisherWriter() {
+        return new FilePublisherWriter();
+    }
+
+    /**
+     * filePublisherListener
+     * @return
+     */
+    @Bean
+    public StepExecutionListener filePublisherListener() {
+        return new FilePublisherListener();
+    }
+}
@@ -0,0 +1,71 @@
+package org.mskcc.smile.publisher.pipeline.config;
+
+import org.mskcc.smile.publisher.pipeline.JsonFileTasklet;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetricsListener;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * JSON file publisher job, which publishes the elements of a JSON array or the
+ * lines of a newline-delimited JSON file. Only created if it is the job being
+ * launched or all jobs are.
+ */
+@Configuration
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.JSON_FILE_PUBLISHER_JOB, matchIfMissing = true)
+public class JsonFilePublisherJobConfiguration {
+
+    @Autowired
+    public JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    public StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private PublisherMetricsListener publisherMetricsListener;
+
+    /**
+     * Json file reading job.
+     * @return
+     */
+    @Bean
+    public Job jsonFilePublisherJob() {
+        return jobBuilderFactory.get(BatchConfiguration.JSON_FILE_PUBLISHER_JOB)
+                .listener(publisherMetricsListener)
+                .start(jsonFileStep())
+                .build();
+    }
+
+    /**
+     * Json file reading step.
+     * @return
+     */
+    @Bean
+    public Step jsonFileStep() {
+        return stepBuilderFactory.get("jsonFileStep")
+                .listener((StepExecutionListener) publisherMetricsListener)
+                .tasklet(jsonFileTasklet())
+                .listener((ChunkListener) publisherMetricsListener)
+                .build();
+    }
+
+    /**
+     * Json file reading and publisher tasklet.
+     * @return
+     */
+    @Bean
+    @StepScope
+    public Tasklet jsonFileTasklet() {
+        return new JsonFileTasklet();
+    }
+}
@@ -0,0 +1,217 @@
+package org.mskcc.smile.publisher.pipeline.config;
+
+import java.util.Map;
+import java.util.concurrent.Future;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestListener;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestProcessor;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestReader;
+import org.mskcc.smile.publisher.pipeline.limsrest.LimsRequestWriter;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetricsListener;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.batch.integration.async.AsyncItemWriter;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * LIMS request publisher job, which fetches requests and their sample manifests from
+ * LimsRest. Only created if it is the job being launched or all jobs are.
+ */
+@Configuration
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB, matchIfMissing = true)
+public class LimsRequestPublisherJobConfiguration {
+
+    private static final Log LOG = LogFactory.getLog(LimsRequestPublisherJobConfiguration.class);
+
+    @Value("${chunk.interval:10}")
+    private Integer chunkInterval;
+
+    @Value("${async.thread_pool_size:5}")
+    private Integer asyncThreadPoolSize;
+
+    @Value("${async.thread_pool_max:10}")
+    private Integer asyncThreadPoolMax;
+
+    @Value("${processor.thread_pool_size:5}")
+    private Integer processorThreadPoolSize;
+
+    @Value("${processor.thread_pool_max:10}")
+    private Integer processorThreadPoolMax;
+
+    // 'platform' uses the fixed thread pools above, 'virtual' runs each task on a virtual thread
+    @Value("${executor.mode:platform}")
+    private String executorMode;
+
+    @Autowired
+    public JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    public StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    @Autowired
+    private PublisherMetricsListener publisherMetricsListener;
+
+    /**
+     * limsRequestPublisherJob
+     * @return
+     */
+    @Bean
+    public Job limsRequestPublisherJob() {
+        return jobBuilderFactory.get(BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB)
+                .listener(publisherMetricsListener)
+                .start(limsRequestPublisherStep())
+                .build();
+    }
+
+    /**
+     * limsRequestPublisherStep
+     * @return
+     */
+    @Bean
+    public Step limsRequestPublisherStep() {
+        return stepBuilderFactory.get("limsRequestPublisherStep")
+                .listener(limsRequestListener())
+                .listener((StepExecutionListener) publisherMetricsListener)
+                .<String, Future<Map<String,Object>>>chunk(chunkInterval)
+                .reader(limsRequestReader())
+                .processor(asyncItemProcessor())
+                .writer(asyncItemWriter())
+                .listener((ChunkListener) publisherMetricsListener)
+                .build();
+    }
+
+    /**
+     * asyncLimsRequestThreadPoolTaskExecutor
+     * @return
+     */
+    @Bean(name = "asyncLimsRequestThreadPoolTaskExecutor")
+    @StepScope
+    public TaskExecutor asyncLimsRequestThreadPoolTaskExecutor() {
+        return newTaskExecutor("lims-request-", asyncThreadPoolSize, asyncThreadPoolMax);
+    }
+
+    /**
+     * processorThreadPoolTaskExecutor
+     * @return
+     */
+    @Bean(name = "processorThreadPoolTaskExecutor")
+    @StepScope
+    public TaskExecutor processorThreadPoolTaskExecutor() {
+        return newTaskExecutor("lims-processor-", processorThreadPoolSize, processorThreadPoolMax);
+    }
+
+    /**
+     * Returns a virtual thread per task executor if the executor mode is 'virtual' and
+     * the JDK supports virtual threads, otherwise a thread pool of the given size.
+     * @param threadNamePrefix
+     * @param corePoolSize
+     * @param maxPoolSize
+     * @return TaskExecutor
+     */
+    private TaskExecutor newTaskExecutor(String threadNamePrefix, Integer corePoolSize, Integer maxPoolSize) {
+        if ("virtual".equalsIgnoreCase(executorMode)) {
+            if (VirtualThreads.isAvailable()) {
+                ConcurrentTaskExecutor executor = new ConcurrentTaskExecutor(
+                        VirtualThreads.newVirtualThreadPerTaskExecutor(threadNamePrefix));
+                executor.setTaskDecorator(publisherMetrics::withCurrentJob);
+                return executor;
+            }
+            LOG.warn("Virtual threads are not supported by this JDK, using thread pools instead");
+        }
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        // metrics recorded by the tasks are counted for the job execution that submitted them
+        executor.setTaskDecorator(publisherMetrics::withCurrentJob);
+        executor.initialize();
+        return executor;
+    }
+
+    /**
+     * asyncItemProcessor
+     * @return
+     */
+    @Bean
+    @StepScope
+    public ItemProcessor<String, Future<Map<String, Object>>> asyncItemProcessor() {
+        AsyncItemProcessor<String, Map<String, Object>> asyncItemProcessor = new AsyncItemProcessor();
+        asyncItemProcessor.setTaskExecutor(processorThreadPoolTaskExecutor());
+        asyncItemProcessor.setDelegate(limsRequestProcessor());
+        return asyncItemProcessor;
+    }
+
+    /**
+     * limsRequestProcessor
+     * @return
+     */
+    @Bean
+    @StepScope
+    public LimsRequestProcessor limsRequestProcessor() {
+        return new LimsRequestProcessor();
+    }
+
+    /**
+     * asyncItemWriter
+     * @return
+     */
+    @Bean
+    @StepScope
+    public ItemWriter<Future<Map<String, Object>>> asyncItemWriter() {
+        AsyncItemWriter<Map<String, Object>> asyncItemWriter = new AsyncItemWriter();
+        asyncItemWriter.setDelegate(limsRequestWriter());
+        return asyncItemWriter;
+    }
+
+    /**
+     * limsRequestWriter
+     * @return
+     */
+    @Bean
+    @StepScope
+    public ItemStreamWriter<Map<String, Object>> limsRequestWriter() {
+        return new LimsRequestWriter();
+    }
+
+    /**
+     * limsRequestReader
+     * @return
+     */
+    @Bean
+    @StepScope
+    public ItemStreamReader<String> limsRequestReader() {
+        return new LimsRequestReader();
+    }
+
+    /**
+     * limsRequestListener
+     * @return
+     */
+    @Bean
+    public StepExecutionListener limsRequestListener() {
+        return new LimsRequestListener();
+    }
+}
@@ -0,0 +1,77 @@
+package org.mskcc.smile.publisher.pipeline.config;
+
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetricsListener;
+import org.mskcc.smile.publisher.pipeline.smile_server.SmileRequestEnvelope;
+import org.mskcc.smile.publisher.pipeline.smile_server.SmileServiceReader;
+import org.mskcc.smile.publisher.pipeline.smile_server.SmileServiceWriter;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * SMILE service publisher job, which republishes requests fetched from the SMILE
+ * server. Only created if it is the job being launched or all jobs are.
+ */
+@Configuration
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.SMILE_SERVICE_PUBLISHER_JOB, matchIfMissing = true)
+public class SmileServicePublisherJobConfiguration {
+
+    @Autowired
+    public JobBuilderFactory jobBuilderFactory;
+
+    @Autowired
+    public StepBuilderFactory stepBuilderFactory;
+
+    @Autowired
+    private PublisherMetricsListener publisherMetricsListener;
+
+    /**
+     * smileServicePublisherJob
+     * @return
+     */
+    @Bean
+    public Job smileServicePublisherJob() {
+        return jobBuilderFactory.get(BatchConfiguration.SMILE_SERVICE_PUBLISHER_JOB)
+                .listener(publisherMetricsListener)
+                .start(smileServicePublisherStep())
+                .build();
+    }
+
+    /**
+     * smileServicePublisherStep
+     * @return
+     */
+    @Bean
+    public Step smileServicePublisherStep() {
+        return stepBuilderFactory.get("smileServicePublisherStep")
+                .listener((StepExecutionListener) publisherMetricsListener)
+                .<SmileRequestEnvelope, SmileRequestEnvelope>chunk(10)
+                .reader(mdbServiceReader())
+                .writer(mdbServiceWriter())
+                .listener((ChunkListener) publisherMetricsListener)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamWriter<SmileRequestEnvelope> mdbServiceWriter() {
+        return new SmileServiceWriter();
+    }
+
+    @Bean
+    @StepScope
+    public ItemStreamReader<SmileRequestEnvelope> mdbServiceReader() {
+        return new SmileServiceReader();
+    }
+}
@@ -0,0 +1,61 @@
+package org.mskcc.smile.publisher.pipeline.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that run each task on a new virtual thread. Virtual threads are
+ * only available on JDK 21 and later, so they are looked up reflectively to keep
+ * the publisher building and running on older JDKs.
+ */
+public final class VirtualThreads {
+    private VirtualThreads() {}
+
+    /**
+     * Returns true if the running JDK supports virtual threads.
+     * @return Boolean
+     */
+    public static Boolean isAvailable() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return Boolean.TRUE;
+        } catch (NoSuchMethodException e) {
+            return Boolean.FALSE;
+        }
+    }
+
+    /**
+     * Returns true if the given executor mode is 'virtual' and the running JDK
+     * supports virtual threads.
+     * @param executorMode
+     * @return Boolean
+     */
+    public static Boolean isEnabled(String executorMode) {
+        return "virtual".equalsIgnoreCase(executorMode) && isAvailable();
+    }
+
+    /**
+     * Returns an executor that starts a new virtual thread for each task. Threads are
+     * named with the given prefix followed by a counter.
+     * @param threadNamePrefix
+     * @return ExecutorService
+     * @throws IllegalStateException if the running JDK does not support virtual threads
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String threadNamePrefix) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, threadNamePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor",
+                    ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not supported by this JDK: "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Circuit breaker for calls to a LimsRest endpoint. Tracks the outcome of the
+ * most recent calls and opens once the failure rate over them reaches the
+ * threshold. While open, callers wait until the open interval has passed instead
+ * of calling LimsRest. A single trial call is then let through: the breaker
+ * closes if it succeeds and opens again if it fails. A lock is used instead of
+ * synchronized so that callers waiting on virtual threads do not pin their
+ * carrier threads.
+ *
+ * <p>Each call is given a permit stamped with the breaker's generation, which
+ * changes whenever the breaker changes state. Outcomes are only recorded for
+ * permits of the current generation, so a slow call let through before the
+ * breaker opened cannot close it again or count against it after it has closed.
+ * A call that ends without an answer from LimsRest, such as one interrupted while
+ * waiting for the rate limiter, releases its permit without recording an outcome.
+ */
+public class LimsCircuitBreaker {
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+    private static final long TRIAL_CALL_POLL_MS = 100;
+
+    private final String endpoint;
+    private final double failureRateThreshold;
+    private final int minimumCalls;
+    private final long openIntervalMs;
+    // ring buffer of the outcomes of the most recent calls, true if the call failed
+    private final boolean[] outcomes;
+    private int outcomeCount;
+    private int nextOutcome;
+    private int failureCount;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition stateChanged = lock.newCondition();
+    private State state = State.CLOSED;
+    private long generation;
+    private long openUntil;
+    private boolean trialCallInFlight;
+    private int tripCount;
+
+    private static final Log LOG = LogFactory.getLog(LimsCircuitBreaker.class);
+
+    public LimsCircuitBreaker(String endpoint, int windowSize, int minimumCalls,
+            double failureRateThreshold, long openIntervalMs) {
+        this.endpoint = endpoint;
+        this.outcomes = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, outcomes.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openIntervalMs = openIntervalMs;
+    }
+
+    /**
+     * Permission for a single call through the breaker, which is passed back with
+     * the outcome of the call.
+     */
+    public static final class Permit {
+        private final long generation;
+        private final boolean trial;
+
+        private Permit(long generation, boolean trial) {
+            this.generation = generation;
+            this.trial = trial;
+        }
+    }
+
+    /**
+     * Waits until a call is allowed through the breaker.
+     * @return Permit
+     * @throws InterruptedException
+     */
+    public Permit awaitPermission() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (true) {
+                Permit permit = acquirePermission();
+                if (permit != null) {
+                    return permit;
+                }
+                if (state == State.OPEN) {
+                    stateChanged.await(openUntil - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                } else {
+                    // wait for the outcome of the trial call
+                    stateChanged.await();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit if a call is allowed through the breaker now, otherwise null.
+     * Used by callers that cannot block, which delay their call by
+     * getPermissionWaitMs() and ask again.
+     * @return Permit
+     */
+    public Permit tryAcquirePermission() {
+        lock.lock();
+        try {
+            return acquirePermission();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how long a caller that was refused a permit should wait before asking again.
+     * @return long - wait time in milliseconds
+     */
+    public long getPermissionWaitMs() {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                return Math.max(1, openUntil - System.currentTimeMillis());
+            }
+            // the outcome of the trial call is not known yet
+            return TRIAL_CALL_POLL_MS;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a call that LimsRest answered. Ignored if the call was let through
+     * before the breaker last changed state.
+     * @param permit
+     */
+    public void recordSuccess(Permit permit) {
+        lock.lock();
+        try {
+            if (permit.generation != generation) {
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                LOG.info("Circuit breaker for LimsRest endpoint '" + endpoint + "' closed");
+                changeState(State.CLOSED);
+                resetOutcomes();
+                return;
+            }
+            recordOutcome(false);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a call that failed, opening the breaker if the failure rate is too high.
+     * Ignored if the call was let through before the breaker last changed state.
+     * @param permit
+     */
+    public void recordFailure(Permit permit) {
+        lock.lock();
+        try {
+            if (permit.generation != generation) {
+                return;
+            }
+            if (state == State.HALF_OPEN) {
+                open();
+                return;
+            }
+            recordOutcome(true);
+            if (outcomeCount >= minimumCalls
+                    && ((double) failureCount / outcomeCount) >= failureRateThreshold) {
+                open();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the permit of a call that has finished. If it was the trial call and
+     * no outcome was recorded for it then the next caller is let through as the trial
+     * call instead. Does nothing if an outcome was recorded.
+     * @param permit
+     */
+    public void release(Permit permit) {
+        lock.lock();
+        try {
+            if (permit.trial && permit.generation == generation && state == State.HALF_OPEN) {
+                trialCallInFlight = false;
+                stateChanged.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getTripCount() {
+        lock.lock();
+        try {
+            return tripCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the breaker and clears its call history and trip count.
+     */
+    public void reset() {
+        lock.lock();
+        try {
+            changeState(State.CLOSED);
+            tripCount = 0;
+            resetOutcomes();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a permit if a call is allowed through now, moving an open breaker whose
+     * open interval has passed to half open. Must be called holding the lock.
+     * @return Permit
+     */
+    private Permit acquirePermission() {
+        if (state == State.OPEN) {
+            if (openUntil > System.currentTimeMillis()) {
+                return null;
+            }
+            changeState(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return new Permit(generation, false);
+        }
+        if (trialCallInFlight) {
+            return null;
+        }
+        trialCallInFlight = true;
+        return new Permit(generation, true);
+    }
+
+    private void open() {
+        changeState(State.OPEN);
+        openUntil = System.currentTimeMillis() + openIntervalMs;
+        tripCount++;
+        LOG.warn("Circuit breaker for LimsRest endpoint '" + endpoint + "' opened, pausing calls for "
+                + openIntervalMs + " ms");
+        resetOutcomes();
+    }
+
+    /**
+     * Moves the breaker to the given state, starting a new generation so that the
+     * outcomes of calls let through in the previous state are ignored.
+     * @param newState
+     */
+    private void changeState(State newState) {
+        state = newState;
+        generation++;
+        trialCallInFlight = false;
+        stateChanged.signalAll();
+    }
+
+    private void recordOutcome(boolean failed) {
+        if (outcomeCount == outcomes.length) {
+            if (outcomes[nextOutcome]) {
+                failureCount--;
+            }
+        } else {
+            outcomeCount++;
+        }
+        outcomes[nextOutcome] = failed;
+        if (failed) {
+            failureCount++;
+        }
+        nextOutcome = (nextOutcome + 1) % outcomes.length;
+    }
+
+    private void resetOutcomes() {
+        outcomeCount = 0;
+        nextOutcome = 0;
+        failureCount = 0;
+    }
+}
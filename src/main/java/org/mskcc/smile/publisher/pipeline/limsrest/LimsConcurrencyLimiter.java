@@ -0,0 +1,263 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Adaptive limit on the number of LimsRest calls in flight (additive increase,
+ * multiplicative decrease). Call latencies and errors are collected over a window
+ * of calls. At the end of each window the limit is cut by the backoff ratio if the
+ * error rate reached the threshold or the p99 latency rose above the tolerated
+ * multiple of the baseline p99, which is the lowest p99 seen so far. Otherwise the
+ * limit is raised by one if calls had to wait for it during the window.
+ * A lock is used instead of synchronized so that callers waiting on virtual
+ * threads do not pin their carrier threads. Non-blocking callers, such as the
+ * reactive LimsRest client, wait for a future instead.
+ */
+public class LimsConcurrencyLimiter {
+    // how far the baseline moves toward a higher p99 after each window, so that a
+    // lasting change in LimsRest latency does not hold the limit down forever
+    private static final double BASELINE_DRIFT = 0.1;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double errorRateThreshold;
+    private final double backoffRatio;
+    private final long[] latencies;
+    private int sampleCount;
+    private int errorCount;
+    private boolean saturated;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private final Queue<CompletableFuture<Void>> asyncWaiters = new ArrayDeque<>();
+    private int limit;
+    private int inFlight;
+    private long baselineNanos;
+    private int increaseCount;
+    private int decreaseCount;
+
+    private static final Log LOG = LogFactory.getLog(LimsConcurrencyLimiter.class);
+
+    public LimsConcurrencyLimiter(boolean enabled, int initialLimit, int minLimit, int maxLimit,
+            int windowSize, double latencyTolerance, double errorRateThreshold, double backoffRatio) {
+        this.enabled = enabled;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.max(this.minLimit, Math.min(initialLimit, this.maxLimit));
+        this.latencies = new long[Math.max(1, windowSize)];
+        this.latencyTolerance = latencyTolerance;
+        this.errorRateThreshold = errorRateThreshold;
+        this.backoffRatio = backoffRatio;
+    }
+
+    /**
+     * Waits until a call is allowed under the current limit.
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                saturated = true;
+                try {
+                    permitReleased.await();
+                } catch (InterruptedException e) {
+                    // pass on a signal this caller may have been woken by
+                    permitReleased.signal();
+                    throw e;
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns a future that completes once a call is allowed under the current limit,
+     * without blocking the caller. Callers waiting this way are let through in order
+     * as calls are released. If the future is cancelled before it completes then no
+     * call is counted.
+     * @return CompletableFuture
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(null);
+        }
+        lock.lock();
+        try {
+            if (inFlight < limit && asyncWaiters.isEmpty()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(null);
+            }
+            saturated = true;
+            CompletableFuture<Void> waiter = new CompletableFuture<>();
+            asyncWaiters.add(waiter);
+            return waiter;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records the outcome of a call let through by acquire() or acquireAsync() and
+     * adjusts the limit at the end of each window.
+     * @param latencyNanos
+     * @param failed
+     */
+    public void release(long latencyNanos, boolean failed) {
+        if (!enabled) {
+            return;
+        }
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            latencies[sampleCount++] = latencyNanos;
+            if (failed) {
+                errorCount++;
+            }
+            int previousLimit = limit;
+            if (sampleCount == latencies.length) {
+                adjustLimit();
+            }
+            granted = freeSlot(limit - previousLimit + 1);
+        } finally {
+            lock.unlock();
+        }
+        completeGranted(granted);
+    }
+
+    /**
+     * Frees the slot of a call let through by acquireAsync() that was given up before
+     * it was made, without recording an outcome.
+     */
+    public void releaseUnused() {
+        if (!enabled) {
+            return;
+        }
+        List<CompletableFuture<Void>> granted;
+        lock.lock();
+        try {
+            granted = freeSlot(1);
+        } finally {
+            lock.unlock();
+        }
+        completeGranted(granted);
+    }
+
+    /**
+     * Frees a call's slot, first handing free slots to callers waiting in
+     * acquireAsync(), in order, and then waking blocked callers.
+     * @param freedSlots - number of slots that may have opened up
+     * @return List - the async waiters granted a slot, to be completed once the lock is released
+     */
+    private List<CompletableFuture<Void>> freeSlot(int freedSlots) {
+        inFlight--;
+        List<CompletableFuture<Void>> granted = new ArrayList<>();
+        while (inFlight < limit && !asyncWaiters.isEmpty()) {
+            granted.add(asyncWaiters.poll());
+            inFlight++;
+        }
+        // wake one waiter per free slot rather than every waiter, there can be
+        // thousands of them when calls run on virtual threads
+        for (int i = 0; i < Math.max(1, freedSlots); i++) {
+            permitReleased.signal();
+        }
+        return granted;
+    }
+
+    /**
+     * Completes the async waiters granted a slot. Waiters are completed outside the
+     * lock since their callers continue on this thread. The slot of a waiter that was
+     * cancelled in the meantime is passed on.
+     * @param granted
+     */
+    private void completeGranted(List<CompletableFuture<Void>> granted) {
+        for (CompletableFuture<Void> waiter : granted) {
+            if (!waiter.complete(null)) {
+                releaseUnused();
+            }
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIncreaseCount() {
+        lock.lock();
+        try {
+            return increaseCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDecreaseCount() {
+        lock.lock();
+        try {
+            return decreaseCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void resetCounts() {
+        lock.lock();
+        try {
+            increaseCount = 0;
+            decreaseCount = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjustLimit() {
+        long[] sorted = Arrays.copyOf(latencies, sampleCount);
+        Arrays.sort(sorted);
+        long p99Nanos = sorted[Math.max(0, (int) Math.ceil(sorted.length * 0.99) - 1)];
+        double errorRate = (double) errorCount / sampleCount;
+        if (baselineNanos == 0 || p99Nanos < baselineNanos) {
+            baselineNanos = p99Nanos;
+        }
+
+        int previousLimit = limit;
+        if (errorRate >= errorRateThreshold || p99Nanos > baselineNanos * latencyTolerance) {
+            limit = Math.max(minLimit, (int) (limit * backoffRatio));
+            baselineNanos += (long) ((p99Nanos - baselineNanos) * BASELINE_DRIFT);
+        } else if (saturated && limit < maxLimit) {
+            limit++;
+        }
+        if (limit > previousLimit) {
+            increaseCount++;
+        } else if (limit < previousLimit) {
+            decreaseCount++;
+            LOG.debug("Lowered LimsRest concurrency limit to " + limit + " (p99 latency: "
+                    + TimeUnit.NANOSECONDS.toMillis(p99Nanos) + " ms, error rate: " + errorRate + ")");
+        }
+
+        sampleCount = 0;
+        errorCount = 0;
+        saturated = false;
+    }
+}
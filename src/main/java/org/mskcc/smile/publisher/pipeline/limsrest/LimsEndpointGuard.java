@@ -0,0 +1,139 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.core.env.Environment;
+import org.springframework.retry.backoff.ExponentialRandomBackOffPolicy;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+/**
+ * Retries and circuit breaker for calls to a single LimsRest endpoint. Server errors
+ * (5xx) and I/O errors such as timeouts are retried with exponential backoff and
+ * random jitter, and count as failures for the circuit breaker. Other errors from
+ * LimsRest, such as client errors (4xx), count as successes, while errors raised
+ * before LimsRest answered are not counted at all. Settings are read
+ * from 'lims.retry.*' and 'lims.circuit_breaker.*', and can be overridden for an
+ * endpoint with 'lims.retry.[endpoint].*' and 'lims.circuit_breaker.[endpoint].*'.
+ */
+public class LimsEndpointGuard {
+    private final String endpoint;
+    private final RetryTemplate retryTemplate;
+    private final LimsCircuitBreaker circuitBreaker;
+    private final AtomicInteger retryCount = new AtomicInteger();
+
+    private static final Log LOG = LogFactory.getLog(LimsEndpointGuard.class);
+
+    public LimsEndpointGuard(String endpoint, Environment environment) {
+        this.endpoint = endpoint;
+
+        Map<Class<? extends Throwable>, Boolean> retryableExceptions = new HashMap<>();
+        retryableExceptions.put(HttpServerErrorException.class, Boolean.TRUE);
+        retryableExceptions.put(ResourceAccessException.class, Boolean.TRUE);
+        SimpleRetryPolicy retryPolicy = new SimpleRetryPolicy(
+                getProperty(environment, "retry", "max_attempts", Integer.class, 3),
+                retryableExceptions, true);
+        ExponentialRandomBackOffPolicy backOffPolicy = new ExponentialRandomBackOffPolicy();
+        backOffPolicy.setInitialInterval(
+                getProperty(environment, "retry", "initial_backoff_ms", Long.class, 200L));
+        backOffPolicy.setMultiplier(getProperty(environment, "retry", "multiplier", Double.class, 2.0));
+        backOffPolicy.setMaxInterval(getProperty(environment, "retry", "max_backoff_ms", Long.class, 5000L));
+        this.retryTemplate = new RetryTemplate();
+        retryTemplate.setRetryPolicy(retryPolicy);
+        retryTemplate.setBackOffPolicy(backOffPolicy);
+
+        this.circuitBreaker = new LimsCircuitBreaker(endpoint,
+                getProperty(environment, "circuit_breaker", "window_size", Integer.class, 20),
+                getProperty(environment, "circuit_breaker", "minimum_calls", Integer.class, 10),
+                getProperty(environment, "circuit_breaker", "failure_rate_threshold", Double.class, 0.5),
+                getProperty(environment, "circuit_breaker", "open_interval_ms", Long.class, 10000L));
+    }
+
+    /**
+     * Runs the call through the circuit breaker, retrying it if it fails with a
+     * retryable error. The last error is rethrown once all attempts have failed.
+     * @param call
+     * @return T
+     */
+    public <T> T execute(Supplier<T> call) {
+        return retryTemplate.execute(context -> {
+            if (context.getRetryCount() > 0) {
+                retryCount.incrementAndGet();
+                LOG.debug("Retrying call to LimsRest endpoint '" + endpoint + "', attempt "
+                        + (context.getRetryCount() + 1) + ": " + context.getLastThrowable().getMessage());
+            }
+            LimsCircuitBreaker.Permit permit;
+            try {
+                permit = circuitBreaker.awaitPermission();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for LimsRest circuit breaker", e);
+            }
+            try {
+                T result = call.get();
+                circuitBreaker.recordSuccess(permit);
+                return result;
+            } catch (HttpServerErrorException | ResourceAccessException e) {
+                circuitBreaker.recordFailure(permit);
+                throw e;
+            } catch (RestClientException e) {
+                // client errors are not a sign that LimsRest is unhealthy
+                circuitBreaker.recordSuccess(permit);
+                throw e;
+            } finally {
+                // calls that failed before LimsRest answered, such as an interrupt while
+                // waiting for the rate limiter, record no outcome
+                circuitBreaker.release(permit);
+            }
+        });
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Returns the endpoint's circuit breaker, for callers that cannot run their
+     * calls through execute() because they must not block.
+     * @return LimsCircuitBreaker
+     */
+    public LimsCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * Counts a retry made by a caller that retries its calls itself.
+     */
+    public void recordRetry() {
+        retryCount.incrementAndGet();
+    }
+
+    public int getRetryCount() {
+        return retryCount.get();
+    }
+
+    public int getCircuitBreakerTripCount() {
+        return circuitBreaker.getTripCount();
+    }
+
+    /**
+     * Clears the retry and circuit breaker trip counts and closes the circuit breaker.
+     */
+    public void reset() {
+        retryCount.set(0);
+        circuitBreaker.reset();
+    }
+
+    private <T> T getProperty(Environment environment, String group, String name, Class<T> type,
+            T defaultValue) {
+        T value = environment.getProperty("lims." + group + "." + name, type, defaultValue);
+        return environment.getProperty("lims." + group + "." + endpoint + "." + name, type, value);
+    }
+}
@@ -0,0 +1,72 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter for calls to LimsRest. Tokens are added at the given
+ * rate up to the burst size, and each call takes a token, waiting for one to be
+ * added if the bucket is empty. A rate of 0 or less disables the limiter.
+ */
+public class LimsRateLimiter {
+    private final double tokensPerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefillNanos;
+    private long throttledNanos;
+
+    public LimsRateLimiter(double requestsPerSecond, int burst) {
+        this.tokensPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    public Boolean isEnabled() {
+        return tokensPerNano > 0;
+    }
+
+    /**
+     * Takes a token, waiting until one is available. Callers that arrive while the
+     * bucket is empty reserve the next tokens in order, so they are not starved.
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos = reserve();
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Takes a token without waiting for it and returns how long the caller must wait
+     * before making its call, 0 if a token was available. Used by callers that cannot
+     * block, which delay their call instead.
+     * @return long - wait time in nanoseconds
+     */
+    public long reserve() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        synchronized (this) {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) * tokensPerNano);
+            lastRefillNanos = now;
+            tokens -= 1;
+            long waitNanos = tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+            throttledNanos += waitNanos;
+            return waitNanos;
+        }
+    }
+
+    /**
+     * Returns the total time callers have waited for a token.
+     * @return long
+     */
+    public synchronized long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos);
+    }
+
+    public synchronized void resetThrottledTime() {
+        throttledNanos = 0;
+    }
+}
@@ -0,0 +1,383 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import io.micrometer.core.instrument.Timer;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import javax.annotation.PreDestroy;
+import javax.net.ssl.SSLException;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ExchangeStrategies;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.util.retry.Retry;
+
+/**
+ * Non-blocking LimsRest client used when 'lims.client_mode' is 'reactive'. Calls
+ * are made on a small set of Reactor Netty event loop threads instead of holding
+ * a thread from the async LimsRest thread pool each, so many more sample manifest
+ * fetches can be in flight at once. Server errors and I/O errors are retried with
+ * the 'lims.retry.*' backoff settings. Calls share the circuit breakers, rate limiter
+ * and adaptive concurrency limit of the blocking client, so LimsRest is protected the
+ * same way in both modes.
+ */
+@Component
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB, matchIfMissing = true)
+public class LimsReactiveClient {
+    @Value("${lims.base_url}")
+    private String limsBaseUrl;
+
+    @Value("${lims.username}")
+    private String limsUsername;
+
+    @Value("${lims.password}")
+    private String limsPassword;
+
+    @Value("${lims.request_samples_endpoint}")
+    private String limsRequestSamplesEndpoint;
+
+    @Value("${lims.sample_manifest_endpoint}")
+    private String limsSampleManifestEndpoint;
+
+    @Value("${lims.reactive.max_connections:500}")
+    private Integer maxConnections;
+
+    @Value("${lims.reactive.max_response_bytes:16777216}")
+    private Integer maxResponseBytes;
+
+    @Value("${lims.http.connect_timeout_ms:10000}")
+    private Integer httpConnectTimeoutMs;
+
+    @Value("${lims.http.socket_timeout_ms:60000}")
+    private Long httpSocketTimeoutMs;
+
+    @Value("${lims.http.connection_request_timeout_ms:30000}")
+    private Long httpConnectionRequestTimeoutMs;
+
+    @Value("${lims.http.keep_alive_ms:30000}")
+    private Long httpKeepAliveMs;
+
+    @Value("${lims.retry.max_attempts:3}")
+    private Integer retryMaxAttempts;
+
+    @Value("${lims.retry.initial_backoff_ms:200}")
+    private Long retryInitialBackoffMs;
+
+    @Value("${lims.retry.max_backoff_ms:5000}")
+    private Long retryMaxBackoffMs;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    @Autowired
+    private LimsRequestUtil limsRestUtil;
+
+    private ConnectionProvider connectionProvider;
+    private volatile WebClient webClient;
+
+    private static final Log LOG = LogFactory.getLog(LimsReactiveClient.class);
+
+    /**
+     * Returns the samples for a given request id.
+     * @param requestId
+     * @return Mono
+     */
+    public Mono<Map<String, Object>> getLimsRequestSamples(String requestId) {
+        String requestUrl = limsBaseUrl + limsRequestSamplesEndpoint + requestId;
+        Long jobExecutionId = publisherMetrics.getCurrentJobExecutionId();
+        return exchange(LimsRequestUtil.REQUEST_SAMPLES_ENDPOINT, jobExecutionId, () -> getWebClient().get()
+                .uri(requestUrl)
+                .retrieve()
+                .bodyToMono(new ParameterizedTypeReference<Map<String, Object>>() {}));
+    }
+
+    /**
+     * Returns a list with a single sample manifest object given a sample id, or an
+     * empty Mono if the manifest could not be fetched.
+     * @param sampleId
+     * @return Mono
+     */
+    public Mono<List<Object>> getSampleManifest(String sampleId) {
+        return getSampleManifest(sampleId, publisherMetrics.getCurrentJobExecutionId());
+    }
+
+    private Mono<List<Object>> getSampleManifest(String sampleId, Long jobExecutionId) {
+        String manifestUrl = limsBaseUrl + limsSampleManifestEndpoint + sampleId;
+        return exchange(LimsRequestUtil.SAMPLE_MANIFEST_ENDPOINT, jobExecutionId, () -> getWebClient().get()
+                .uri(manifestUrl)
+                .retrieve()
+                .bodyToMono(Object[].class))
+                .filter(sampleManifest -> sampleManifest.length > 0)
+                .map(Arrays::asList)
+                .switchIfEmpty(Mono.fromRunnable(() -> LOG.error("No sample manifest returned for '"
+                        + sampleId + "', request url: '" + manifestUrl + "'")))
+                .onErrorResume(e -> {
+                    LOG.error("Error encountered during attempt to fetch sample manifest for '"
+                            + sampleId + "', request url: '" + manifestUrl + "'", e);
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Returns sample manifests for a batch of sample ids, keyed by igo sample id.
+     * If the batch fails then it is split in half and each half is fetched again,
+     * down to single sample ids.
+     * @param sampleIds
+     * @return Mono
+     */
+    public Mono<Map<String, Object>> getSampleManifests(List<String> sampleIds) {
+        return getSampleManifests(sampleIds, publisherMetrics.getCurrentJobExecutionId());
+    }
+
+    /**
+     * Returns sample manifests for a batch of sample ids, recording the call metrics
+     * for the given job execution since the split batches are fetched again from the
+     * event loop threads.
+     * @param sampleIds
+     * @param jobExecutionId
+     * @return Mono
+     */
+    private Mono<Map<String, Object>> getSampleManifests(List<String> sampleIds, Long jobExecutionId) {
+        if (sampleIds.size() == 1) {
+            String sampleId = sampleIds.get(0);
+            return getSampleManifest(sampleId, jobExecutionId)
+                    .map(manifest -> {
+                        Map<String, Object> sampleManifests = new HashMap<>();
+                        sampleManifests.put(sampleId, manifest.get(0));
+                        return sampleManifests;
+                    })
+                    .defaultIfEmpty(new HashMap<>());
+        }
+        String manifestUrl = limsBaseUrl + limsSampleManifestEndpoint + StringUtils.join(sampleIds, ",");
+        return exchange(LimsRequestUtil.SAMPLE_MANIFEST_ENDPOINT, jobExecutionId, () -> getWebClient().get()
+                .uri(manifestUrl)
+                .retrieve()
+                .bodyToMono(Object[].class))
+                .map(response -> {
+                    Map<String, Object> sampleManifests = new HashMap<>();
+                    for (Object sampleManifest : response) {
+                        sampleManifests.put((String) ((Map) sampleManifest).get("igoId"), sampleManifest);
+                    }
+                    return sampleManifests;
+                })
+                .defaultIfEmpty(new HashMap<>())
+                .onErrorResume(e -> {
+                    LOG.warn("Error encountered during attempt to fetch sample manifests for batch of "
+                            + sampleIds.size() + " samples, splitting batch and retrying: " + sampleIds);
+                    int mid = sampleIds.size() / 2;
+                    return Flux.merge(getSampleManifests(sampleIds.subList(0, mid), jobExecutionId),
+                            getSampleManifests(sampleIds.subList(mid, sampleIds.size()), jobExecutionId))
+                            .reduce(new HashMap<String, Object>(), (sampleManifests, half) -> {
+                                sampleManifests.putAll(half);
+                                return sampleManifests;
+                            });
+                });
+    }
+
+    /**
+     * Releases the pooled connections held by the client.
+     */
+    @PreDestroy
+    public void close() {
+        if (connectionProvider != null) {
+            connectionProvider.dispose();
+        }
+    }
+
+    /**
+     * Makes a LimsRest call, recording the latency of each attempt by endpoint and
+     * outcome, and retries it with jittered exponential backoff if it fails with a
+     * server error, an I/O error or a timeout. Each attempt goes through the same
+     * endpoint circuit breaker, rate limiter and adaptive concurrency limit as calls
+     * made by the blocking client, without blocking: the attempt is delayed until
+     * the breaker and the rate limiter allow it and a concurrency slot is free.
+     * Latencies are recorded for the given job execution since calls complete on the
+     * event loop threads, which are not bound to it.
+     * @param endpoint
+     * @param jobExecutionId
+     * @param call
+     * @return Mono
+     */
+    private <T> Mono<T> exchange(String endpoint, Long jobExecutionId, Supplier<Mono<T>> call) {
+        LimsEndpointGuard endpointGuard = limsRestUtil.getEndpointGuard(endpoint);
+        LimsCircuitBreaker circuitBreaker = endpointGuard.getCircuitBreaker();
+        LimsConcurrencyLimiter concurrencyLimiter = limsRestUtil.getConcurrencyLimiter();
+        Mono<T> attempt = awaitCircuitBreaker(circuitBreaker).flatMap(permit ->
+                delay(limsRestUtil.getRateLimiter().reserve())
+                .then(acquireConcurrencySlot(concurrencyLimiter))
+                .then(Mono.defer(() -> {
+                    long startNanos = System.nanoTime();
+                    Timer.Sample sample = publisherMetrics.startTimer();
+                    return call.get()
+                            .timeout(Duration.ofMillis(httpSocketTimeoutMs))
+                            .doOnSuccess(result -> {
+                                circuitBreaker.recordSuccess(permit);
+                                concurrencyLimiter.release(System.nanoTime() - startNanos, false);
+                                publisherMetrics.stopTimer(jobExecutionId, sample,
+                                        PublisherMetrics.LIMS_REQUEST_TIMER,
+                                        "endpoint", endpoint, "outcome", "success");
+                            })
+                            .doOnError(e -> {
+                                if (isRetryable(e)) {
+                                    circuitBreaker.recordFailure(permit);
+                                } else if (e instanceof WebClientResponseException) {
+                                    // client errors are not a sign that LimsRest is unhealthy
+                                    circuitBreaker.recordSuccess(permit);
+                                }
+                                concurrencyLimiter.release(System.nanoTime() - startNanos, isOverload(e));
+                                publisherMetrics.stopTimer(jobExecutionId, sample,
+                                        PublisherMetrics.LIMS_REQUEST_TIMER,
+                                        "endpoint", endpoint, "outcome", "error");
+                            })
+                            .doOnCancel(concurrencyLimiter::releaseUnused);
+                }))
+                // attempts cancelled or failed before LimsRest answered record no outcome
+                .doFinally(signal -> circuitBreaker.release(permit)));
+        return attempt.retryWhen(Retry.backoff(Math.max(0, retryMaxAttempts - 1),
+                Duration.ofMillis(retryInitialBackoffMs))
+                .maxBackoff(Duration.ofMillis(retryMaxBackoffMs))
+                .filter(this::isRetryable)
+                .doBeforeRetry(signal -> endpointGuard.recordRetry())
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+    }
+
+    /**
+     * Emits the circuit breaker's permit once it lets a call through, checking again
+     * after the wait it asks for while it is open.
+     * @param circuitBreaker
+     * @return Mono
+     */
+    private Mono<LimsCircuitBreaker.Permit> awaitCircuitBreaker(LimsCircuitBreaker circuitBreaker) {
+        return Mono.defer(() -> {
+            LimsCircuitBreaker.Permit permit = circuitBreaker.tryAcquirePermission();
+            return (permit != null) ? Mono.just(permit)
+                    : Mono.delay(Duration.ofMillis(circuitBreaker.getPermissionWaitMs()))
+                            .then(awaitCircuitBreaker(circuitBreaker));
+        });
+    }
+
+    private Mono<Void> delay(long waitNanos) {
+        return (waitNanos > 0) ? Mono.delay(Duration.ofNanos(waitNanos)).then() : Mono.empty();
+    }
+
+    /**
+     * Completes once the adaptive concurrency limit lets a call through. The slot
+     * is given back if the call is cancelled while waiting for it.
+     * @param concurrencyLimiter
+     * @return Mono
+     */
+    private Mono<Void> acquireConcurrencySlot(LimsConcurrencyLimiter concurrencyLimiter) {
+        return Mono.create(sink -> {
+            CompletableFuture<Void> slot = concurrencyLimiter.acquireAsync();
+            sink.onCancel(() -> {
+                if (!slot.cancel(false)) {
+                    concurrencyLimiter.releaseUnused();
+                }
+            });
+            slot.thenRun(sink::success);
+        });
+    }
+
+    /**
+     * Returns true if a failed call is a sign that LimsRest is overloaded, which is
+     * any failure other than a client error, or a client error telling the caller
+     * to slow down.
+     * @param e
+     * @return boolean
+     */
+    private boolean isOverload(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            HttpStatus status = ((WebClientResponseException) e).getStatusCode();
+            return !status.is4xxClientError() || status == HttpStatus.TOO_MANY_REQUESTS;
+        }
+        return true;
+    }
+
+    private boolean isRetryable(Throwable e) {
+        if (e instanceof WebClientResponseException) {
+            return ((WebClientResponseException) e).getStatusCode().is5xxServerError();
+        }
+        return e instanceof IOException || e instanceof TimeoutException;
+    }
+
+    /**
+     * Returns the web client, building it on first use so that the event loop and
+     * connection pool are only created when the reactive client mode is used.
+     * @return WebClient
+     */
+    private WebClient getWebClient() {
+        if (webClient == null) {
+            synchronized (this) {
+                if (webClient == null) {
+                    this.webClient = buildWebClient();
+                }
+            }
+        }
+        return webClient;
+    }
+
+    /**
+     * Builds a web client over a pooled Reactor Netty http client. The client
+     * bypasses the SSL cert check like the blocking LimsRest client does.
+     * @return WebClient
+     */
+    private WebClient buildWebClient() {
+        this.connectionProvider = ConnectionProvider.builder("lims")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(httpConnectionRequestTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(httpKeepAliveMs))
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .tcpConfiguration(tcpClient -> tcpClient
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, httpConnectTimeoutMs));
+        if (limsBaseUrl.startsWith("https")) {
+            SslContext sslContext;
+            try {
+                sslContext = SslContextBuilder.forClient()
+                        .trustManager(InsecureTrustManagerFactory.INSTANCE).build();
+            } catch (SSLException e) {
+                throw new IllegalStateException("Error building LimsRest SSL context", e);
+            }
+            httpClient = httpClient.secure(spec -> spec.sslContext(sslContext));
+        }
+        WebClient client = WebClient.builder()
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .exchangeStrategies(ExchangeStrategies.builder()
+                        .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(maxResponseBytes))
+                        .build())
+                .defaultHeaders(headers -> {
+                    headers.setContentType(MediaType.APPLICATION_JSON);
+                    headers.setBasicAuth(limsUsername, limsPassword);
+                })
+                .build();
+        LOG.info("Initialized reactive LimsRest client with connection pool size: " + maxConnections);
+        return client;
+    }
+}
@@ -0,0 +1,150 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Collects errors encountered while fetching data from LimsRest, by request id.
+ * Errors may be recorded concurrently from any thread without locking. Every error
+ * is counted but only the first 'lims.errors.max_messages_per_request' messages
+ * are stored for each request.
+ */
+@Component
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB, matchIfMissing = true)
+public class LimsRequestErrorRegistry {
+    @Value("${lims.errors.max_messages_per_request:50}")
+    private Integer maxMessagesPerRequest;
+
+    private final ConcurrentMap<String, RequestErrors> errorsByRequestId = new ConcurrentHashMap<>();
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Records an error for the given request id.
+     * @param requestId
+     * @param error
+     */
+    public void recordError(String requestId, String error) {
+        errorsByRequestId.computeIfAbsent(requestId, k -> new RequestErrors(maxMessagesPerRequest))
+                .add(error);
+    }
+
+    public Boolean isEmpty() {
+        return errorsByRequestId.isEmpty();
+    }
+
+    public void clear() {
+        errorsByRequestId.clear();
+    }
+
+    /**
+     * Returns a snapshot of the stored error messages by request id, sorted by request id.
+     * @return Map
+     */
+    public Map<String, List<String>> getErrorMessages() {
+        Map<String, List<String>> errorMessages = new TreeMap<>();
+        for (Map.Entry<String, RequestErrors> entry : errorsByRequestId.entrySet()) {
+            errorMessages.put(entry.getKey(), entry.getValue().getMessages());
+        }
+        return errorMessages;
+    }
+
+    /**
+     * Returns the total number of errors recorded for the given request id,
+     * including errors whose messages were not stored.
+     * @param requestId
+     * @return int
+     */
+    public int getErrorCount(String requestId) {
+        RequestErrors errors = errorsByRequestId.get(requestId);
+        return (errors == null) ? 0 : errors.getErrorCount();
+    }
+
+    /**
+     * Returns the error summary as structured JSON.
+     * @return String
+     * @throws IOException
+     */
+    public String toJson() throws IOException {
+        return mapper.writeValueAsString(getSummary());
+    }
+
+    /**
+     * Writes the error summary as structured JSON to the given file.
+     * @param summaryFile
+     * @throws IOException
+     */
+    public void writeJson(File summaryFile) throws IOException {
+        mapper.writeValue(summaryFile, getSummary());
+    }
+
+    private Map<String, Object> getSummary() {
+        List<Map<String, Object>> requests = new ArrayList<>();
+        int totalErrors = 0;
+        for (Map.Entry<String, List<String>> entry : getErrorMessages().entrySet()) {
+            int errorCount = getErrorCount(entry.getKey());
+            totalErrors += errorCount;
+            Map<String, Object> request = new LinkedHashMap<>();
+            request.put("requestId", entry.getKey());
+            request.put("errorCount", errorCount);
+            request.put("errors", entry.getValue());
+            requests.add(request);
+        }
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("totalRequestsWithErrors", requests.size());
+        summary.put("totalErrors", totalErrors);
+        summary.put("requests", requests);
+        return summary;
+    }
+
+    /**
+     * Error count and capped list of error messages for a single request.
+     */
+    private static class RequestErrors {
+        private final AtomicInteger errorCount = new AtomicInteger();
+        private final AtomicReferenceArray<String> messages;
+
+        RequestErrors(int maxMessages) {
+            this.messages = new AtomicReferenceArray<>(Math.max(0, maxMessages));
+        }
+
+        void add(String error) {
+            int slot = errorCount.getAndIncrement();
+            if (slot < messages.length()) {
+                messages.set(slot, error);
+            }
+        }
+
+        int getErrorCount() {
+            return errorCount.get();
+        }
+
+        List<String> getMessages() {
+            int storedCount = Math.min(errorCount.get(), messages.length());
+            List<String> stored = new ArrayList<>(storedCount);
+            for (int i = 0; i < storedCount; i++) {
+                // slot may have been reserved but not written yet
+                String message = messages.get(i);
+                if (message != null) {
+                    stored.add(message);
+                }
+            }
+            return stored;
+        }
+    }
+}
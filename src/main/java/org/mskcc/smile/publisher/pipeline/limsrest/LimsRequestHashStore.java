@@ -0,0 +1,152 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.state.LocalStateStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps a hash of the last request JSON published for each LIMS request id in the
+ * local state store, so that requests that have not changed since they were last
+ * published can be skipped. Hashes older than 'lims.dedup.max_age_days' are evicted,
+ * and the oldest hashes are evicted once there are more than 'lims.dedup.max_entries'.
+ * Disabled if 'lims.dedup.enabled' is false.
+ */
+@Component
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB, matchIfMissing = true)
+public class LimsRequestHashStore {
+    private static final String REQUEST_HASHES_DDL = "CREATE TABLE IF NOT EXISTS lims_request_hashes ("
+            + "request_id TEXT PRIMARY KEY, content_hash TEXT NOT NULL, published_at INTEGER NOT NULL)";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    @Value("${lims.dedup.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${lims.dedup.max_entries:100000}")
+    private Integer maxEntries;
+
+    @Value("${lims.dedup.max_age_days:30}")
+    private Integer maxAgeDays;
+
+    @Autowired
+    private LocalStateStore localStateStore;
+
+    private volatile boolean tableCreated;
+    private final AtomicInteger skippedCount = new AtomicInteger();
+
+    private static final Log LOG = LogFactory.getLog(LimsRequestHashStore.class);
+
+    public Boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns true if the request was last published with the same content hash.
+     * Counts the request as skipped if so.
+     * @param requestId
+     * @param contentHash
+     * @return Boolean
+     */
+    public Boolean isUnchanged(String requestId, String contentHash) {
+        if (!enabled) {
+            return Boolean.FALSE;
+        }
+        createTable();
+        List<String> hashes = localStateStore.getJdbcTemplate().queryForList(
+                "SELECT content_hash FROM lims_request_hashes WHERE request_id = ? AND published_at >= ?",
+                String.class, requestId, getOldestAllowedTimestamp());
+        if (!hashes.isEmpty() && hashes.get(0).equals(contentHash)) {
+            skippedCount.incrementAndGet();
+            return Boolean.TRUE;
+        }
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Stores the content hash of a request that has been published.
+     * @param requestId
+     * @param contentHash
+     */
+    public void putHash(String requestId, String contentHash) {
+        if (!enabled) {
+            return;
+        }
+        createTable();
+        localStateStore.update("INSERT OR REPLACE INTO lims_request_hashes "
+                + "(request_id, content_hash, published_at) VALUES (?, ?, ?)",
+                requestId, contentHash, System.currentTimeMillis());
+    }
+
+    /**
+     * Evicts hashes that are too old, then the oldest hashes over the max number of entries.
+     */
+    public void evict() {
+        if (!enabled || !tableCreated) {
+            return;
+        }
+        int evicted = localStateStore.update("DELETE FROM lims_request_hashes WHERE published_at < ?",
+                getOldestAllowedTimestamp());
+        Integer entries = localStateStore.getJdbcTemplate().queryForObject(
+                "SELECT COUNT(*) FROM lims_request_hashes", Integer.class);
+        if (entries != null && entries > maxEntries) {
+            evicted += localStateStore.update("DELETE FROM lims_request_hashes WHERE request_id IN ("
+                    + "SELECT request_id FROM lims_request_hashes ORDER BY published_at ASC LIMIT ?)",
+                    entries - maxEntries);
+        }
+        if (evicted > 0) {
+            LOG.info("Evicted " + evicted + " request hashes from the local state store");
+        }
+    }
+
+    public Integer getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    public void resetSkippedCount() {
+        skippedCount.set(0);
+    }
+
+    /**
+     * Returns the SHA-256 hash of the given request JSON as a hex string.
+     * @param requestJson
+     * @return String
+     */
+    public static String hash(String requestJson) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(requestJson.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private long getOldestAllowedTimestamp() {
+        return System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays);
+    }
+
+    private void createTable() {
+        if (!tableCreated) {
+            localStateStore.createTable(REQUEST_HASHES_DDL);
+            this.tableCreated = true;
+        }
+    }
+}
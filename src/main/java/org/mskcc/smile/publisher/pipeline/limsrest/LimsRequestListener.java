@@ -1,11 +1,17 @@
 package org.mskcc.smile.publisher.pipeline.limsrest;
 
+import java.io.IOException;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
+import org.springframework.batch.core.BatchStatus;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.StepExecutionListener;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 
 /**
  *
@@ -15,19 +21,85 @@ public class LimsRequestListener implements StepExecutionListener {
     @Autowired
     private LimsRequestUtil limsRestUtil;
 
+    @Autowired
+    private LimsSyncStore limsSyncStore;
+
+    @Autowired
+    private LimsRequestHashStore limsRequestHashStore;
+
+    @Autowired
+    private SampleManifestCache sampleManifestCache;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    @Autowired
+    private PublisherSink publisherSink;
+
+    @Value("${lims.errors.summary_filepath:}")
+    private String errorSummaryFilepath;
+
     private static final Log LOG = LogFactory.getLog(LimsRequestListener.class);
 
     @Override
-    public void beforeStep(StepExecution se) {}
+    public void beforeStep(StepExecution se) {
+        limsRestUtil.getLimsRequestErrorRegistry().clear();
+        limsRequestHashStore.resetSkippedCount();
+        for (LimsEndpointGuard endpointGuard : limsRestUtil.getEndpointGuards()) {
+            endpointGuard.reset();
+        }
+        limsRestUtil.getRateLimiter().resetThrottledTime();
+        limsRestUtil.getConcurrencyLimiter().resetCounts();
+    }
 
     @Override
     public ExitStatus afterStep(StepExecution se) {
         if (!limsRestUtil.getLimsRequestErrors().isEmpty()) {
             LOG.warn("Encountered errors while fetching from LimsRest - see report summary for details");
             limsRestUtil.printFailedRequestSamplesSummary();
+            if (!StringUtils.isBlank(errorSummaryFilepath)) {
+                try {
+                    limsRestUtil.writeFailedRequestSamplesSummary(errorSummaryFilepath);
+                    LOG.info("Wrote error summary report to: " + errorSummaryFilepath);
+                } catch (IOException e) {
+                    LOG.error("Error writing error summary report to: " + errorSummaryFilepath, e);
+                }
+            }
         } else {
             LOG.info("No errors to report during fetch from LimsRest");
         }
+        for (LimsEndpointGuard endpointGuard : limsRestUtil.getEndpointGuards()) {
+            LOG.info("LimsRest endpoint '" + endpointGuard.getEndpoint() + "': "
+                    + endpointGuard.getRetryCount() + " retries, "
+                    + endpointGuard.getCircuitBreakerTripCount() + " circuit breaker trips");
+            publisherMetrics.increment(PublisherMetrics.LIMS_RETRIES_COUNTER,
+                    endpointGuard.getRetryCount(), "endpoint", endpointGuard.getEndpoint());
+            publisherMetrics.increment(PublisherMetrics.LIMS_CIRCUIT_BREAKER_TRIPS_COUNTER,
+                    endpointGuard.getCircuitBreakerTripCount(), "endpoint", endpointGuard.getEndpoint());
+        }
+        if (limsRestUtil.getRateLimiter().isEnabled()) {
+            LOG.info("LimsRest calls waited " + limsRestUtil.getRateLimiter().getThrottledMillis()
+                    + " ms in total for the rate limiter");
+        }
+        LimsConcurrencyLimiter concurrencyLimiter = limsRestUtil.getConcurrencyLimiter();
+        LOG.info("LimsRest concurrency limit: " + concurrencyLimiter.getLimit() + " (raised "
+                + concurrencyLimiter.getIncreaseCount() + " times, lowered "
+                + concurrencyLimiter.getDecreaseCount() + " times)");
+        if (limsRequestHashStore.isEnabled()) {
+            LOG.info("Skipped publishing " + limsRequestHashStore.getSkippedCount()
+                    + " requests unchanged since they were last published");
+            limsRequestHashStore.evict();
+        }
+        sampleManifestCache.evictExpired();
+        Boolean syncMode = Boolean.valueOf(se.getJobParameters().getString("syncMode"));
+        if (syncMode && se.getStatus() == BatchStatus.COMPLETED) {
+            if (publisherSink.isDurable()) {
+                limsSyncStore.finishSync();
+            } else {
+                LOG.info("Not advancing the LIMS sync high-water mark since messages were not "
+                        + "published to NATS");
+            }
+        }
         return ExitStatus.COMPLETED;
     }
 
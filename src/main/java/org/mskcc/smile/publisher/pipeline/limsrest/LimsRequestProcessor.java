@@ -1,19 +1,26 @@
 package org.mskcc.smile.publisher.pipeline.limsrest;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 
 
@@ -30,15 +37,45 @@ public class LimsRequestProcessor implements ItemProcessor<String, Map<String, O
     @Value("#{jobParameters[igoSampleIds]}")
     private String igoSampleIds;
 
+    @Value("#{jobParameters[refreshManifests]}")
+    private Boolean refreshManifests;
+
+    @Value("#{jobParameters[requestIds]}")
+    private String requestIds;
+
+    @Value("#{jobParameters[syncMode]}")
+    private Boolean syncMode;
+
+    // defaults to the LimsRest connection pool size
+    @Value("${lims.sample_manifest.max_concurrency_per_request:#{null}}")
+    private Integer maxConcurrentManifestFetches;
+
+    @Value("${lims.client_mode:blocking}")
+    private String limsClientMode;
+
+    @Value("${lims.reactive.max_concurrency_per_request:256}")
+    private Integer maxConcurrentReactiveManifestFetches;
+
     @Autowired
     private LimsRequestUtil limsRestUtil;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    @Autowired
+    private LimsReactiveClient limsReactiveClient;
+
+    @Autowired
+    private LimsSyncStore limsSyncStore;
+
+    @Autowired
+    private SampleManifestCache sampleManifestCache;
+
+    @Autowired
+    private PublisherSink publisherSink;
 
     @Override
     public Map<String, Object> process(String requestId) throws Exception {
-        CompletableFuture<Map<String, Object>> futureRequestResponse =
-                limsRestUtil.getLimsRequestSamples(requestId);
+        CompletableFuture<Map<String, Object>> futureRequestResponse = isReactiveClientMode()
+                ? limsReactiveClient.getLimsRequestSamples(requestId).toFuture()
+                : limsRestUtil.getLimsRequestSamples(requestId);
         Map<String, Object> requestResponse = futureRequestResponse.get();
         // if filtering by cmo requests only then return null if request is not a cmo request
         // if the field is not available in the json response then set default to false
@@ -47,6 +84,10 @@ public class LimsRequestProcessor implements ItemProcessor<String, Map<String, O
             if (!isCmoRequest) {
                 LOG.info("Skipping non-CMO request '" + requestId + "'");
                 limsRestUtil.updateLimsRequestErrors(requestId, "Non-CMO request");
+                // skipped on purpose so there is nothing left to sync for this request
+                if (publisherSink.isDurable()) {
+                    limsSyncStore.markSynced(requestId);
+                }
                 return null;
             }
         }
@@ -56,26 +97,64 @@ public class LimsRequestProcessor implements ItemProcessor<String, Map<String, O
         if (!requestResponse.containsKey("samples") || samples == null || samples.isEmpty()) {
             LOG.error("Parsing request with no samples" + requestId);
             limsRestUtil.updateLimsRequestErrors(requestId, "Request JSON does not contain 'samples'");
+            // nothing to publish until the request is delivered again with samples
+            if (publisherSink.isDurable()) {
+                limsSyncStore.markSynced(requestId);
+            }
             return null;
         }
 
         // if igoSampleIds provided then limit set of samples to get data for to only those
         Set<String> igoSamplesToFetch;
         if (!StringUtils.isBlank(igoSampleIds)) {
-            igoSamplesToFetch = new HashSet<>(Arrays.asList(igoSampleIds.split(",")));
+            igoSamplesToFetch = new LinkedHashSet<>(Arrays.asList(igoSampleIds.split(",")));
         } else {
             igoSamplesToFetch = samples.keySet();
         }
 
-        // get sample manifest for each sample id
+        // cached sample manifests are only used by date range runs unless a refresh of all
+        // manifests was requested, requests given explicitly and requests synced because they
+        // were delivered again are expected to have changed in LIMS
+        List<String> sampleIdsToFetch = new ArrayList<>(igoSamplesToFetch);
+        Map<String, CompletableFuture<List<Object>>> manifestFutures = new HashMap<>();
+        Set<String> cachedSampleIds = new HashSet<>();
+        if (!Boolean.TRUE.equals(refreshManifests) && StringUtils.isBlank(requestIds)
+                && !Boolean.TRUE.equals(syncMode)) {
+            Map<String, Map<String, Object>> cachedManifests = sampleManifestCache.getAll(sampleIdsToFetch);
+            for (Map.Entry<String, Map<String, Object>> cached : cachedManifests.entrySet()) {
+                cachedSampleIds.add(cached.getKey());
+                manifestFutures.put(cached.getKey(),
+                        CompletableFuture.completedFuture(Collections.singletonList(cached.getValue())));
+            }
+        }
+
+        // fetch sample manifests for every uncached sample and wait for all of them to complete
+        List<String> uncachedSampleIds = new ArrayList<>();
+        for (String sampleId : sampleIdsToFetch) {
+            if (!cachedSampleIds.contains(sampleId)) {
+                uncachedSampleIds.add(sampleId);
+            }
+        }
+        if (isReactiveClientMode()) {
+            fetchSampleManifestsReactive(uncachedSampleIds, manifestFutures);
+        } else {
+            fetchSampleManifests(uncachedSampleIds, manifestFutures);
+        }
+        CompletableFuture.allOf(manifestFutures.values().toArray(new CompletableFuture[0]))
+                .handle((result, ex) -> null).join();
+
+        // get sample manifest for each sample id, in the same order as the samples
         List<String> samplesWithErrors = new ArrayList<>();
         List<Object> sampleManifestList = new ArrayList<>();
-        for (String sampleId : igoSamplesToFetch) {
+        for (String sampleId : sampleIdsToFetch) {
             try {
-                CompletableFuture<List<Object>> manifest = limsRestUtil.getSampleManifest(sampleId);
-                if (manifest != null) {
-                    Object smObj = manifest.get().get(0);
-                    Map<String, Object> sampleManifest = mapper.convertValue(smObj, Map.class);
+                List<Object> manifest = manifestFutures.get(sampleId).join();
+                if (manifest != null && manifest.get(0) != null) {
+                    // manifests are already decoded into maps by the rest template
+                    Map<String, Object> sampleManifest = (Map<String, Object>) manifest.get(0);
+                    if (!cachedSampleIds.contains(sampleId)) {
+                        sampleManifestCache.put(sampleId, sampleManifest);
+                    }
                     Map<String, Object> sampleRequestMap = samples.get(sampleId);
                     sampleManifest.put("igoComplete", sampleRequestMap.get("igoComplete"));
                     sampleManifest.put("sampleStatus", sampleRequestMap.get("sampleStatus"));
@@ -104,4 +183,105 @@ public class LimsRequestProcessor implements ItemProcessor<String, Map<String, O
         return requestResponse;
     }
 
+    /**
+     * Submits sample manifest fetches for the given samples up front on the async
+     * LimsRest thread pool, bounded by the per-request concurrency cap.
+     * Samples are fetched in batches if a manifest batch size > 1 is configured.
+     * @param uncachedSampleIds
+     * @param manifestFutures
+     */
+    private void fetchSampleManifests(List<String> uncachedSampleIds,
+            Map<String, CompletableFuture<List<Object>>> manifestFutures) {
+        Semaphore manifestFetchPermits = new Semaphore((maxConcurrentManifestFetches != null)
+                ? maxConcurrentManifestFetches : limsRestUtil.getHttpMaxConnectionsTotal());
+        int batchSize = Math.max(1, limsRestUtil.getSampleManifestBatchSize());
+        for (int i = 0; i < uncachedSampleIds.size(); i += batchSize) {
+            List<String> batch = uncachedSampleIds.subList(i,
+                    Math.min(i + batchSize, uncachedSampleIds.size()));
+            if (batch.size() == 1) {
+                String sampleId = batch.get(0);
+                manifestFutures.put(sampleId, submitWithPermit(manifestFetchPermits,
+                        () -> limsRestUtil.getSampleManifest(sampleId)));
+                continue;
+            }
+            CompletableFuture<Map<String, Object>> batchManifests = submitWithPermit(manifestFetchPermits,
+                    () -> limsRestUtil.getSampleManifests(batch));
+            for (String sampleId : batch) {
+                manifestFutures.put(sampleId, batchManifests.thenApply(manifests ->
+                        manifests.containsKey(sampleId)
+                        ? Collections.singletonList(manifests.get(sampleId)) : null));
+            }
+        }
+    }
+
+    /**
+     * Fetches sample manifests for the given samples with the non-blocking LimsRest
+     * client. Batches are requested as earlier ones complete, with at most
+     * 'lims.reactive.max_concurrency_per_request' batches in flight, and this thread
+     * waits until all of them are done so that requests are only handed to the
+     * writer once their manifests are complete.
+     * @param uncachedSampleIds
+     * @param manifestFutures
+     */
+    private void fetchSampleManifestsReactive(List<String> uncachedSampleIds,
+            Map<String, CompletableFuture<List<Object>>> manifestFutures) {
+        int batchSize = Math.max(1, limsRestUtil.getSampleManifestBatchSize());
+        // the fetches are assembled on this thread so that their metrics are recorded for
+        // this job execution, nothing is sent until they are subscribed to below
+        List<Mono<Map<String, Object>>> batchFetches = new ArrayList<>();
+        for (int i = 0; i < uncachedSampleIds.size(); i += batchSize) {
+            batchFetches.add(limsReactiveClient.getSampleManifests(
+                    uncachedSampleIds.subList(i, Math.min(i + batchSize, uncachedSampleIds.size()))));
+        }
+        Map<String, Object> sampleManifests = Flux.fromIterable(batchFetches)
+                .flatMap(batchFetch -> batchFetch, maxConcurrentReactiveManifestFetches)
+                .reduce(new HashMap<String, Object>(), (manifests, batchManifests) -> {
+                    manifests.putAll(batchManifests);
+                    return manifests;
+                })
+                .block();
+        for (String sampleId : uncachedSampleIds) {
+            manifestFutures.put(sampleId, CompletableFuture.completedFuture(
+                    sampleManifests.containsKey(sampleId)
+                    ? Collections.singletonList(sampleManifests.get(sampleId)) : null));
+        }
+    }
+
+    private Boolean isReactiveClientMode() {
+        return "reactive".equalsIgnoreCase(limsClientMode);
+    }
+
+    /**
+     * Submits a sample manifest fetch once a permit is available.
+     * The permit is released when the fetch completes.
+     * @param permits
+     * @param fetch
+     * @return CompletableFuture
+     */
+    private <T> CompletableFuture<T> submitWithPermit(Semaphore permits,
+            Callable<CompletableFuture<T>> fetch) {
+        CompletableFuture<T> result;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        try {
+            result = fetch.call();
+        } catch (Exception e) {
+            permits.release();
+            result = new CompletableFuture<>();
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (result == null) {
+            permits.release();
+            return CompletableFuture.completedFuture(null);
+        }
+        return result.whenComplete((value, ex) -> permits.release());
+    }
+
 }
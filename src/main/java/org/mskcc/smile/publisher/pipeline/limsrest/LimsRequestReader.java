@@ -1,8 +1,10 @@
 package org.mskcc.smile.publisher.pipeline.limsrest;
 
 import java.util.Arrays;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.batch.item.ExecutionContext;
@@ -19,6 +21,8 @@ import org.springframework.beans.factory.annotation.Value;
  * @author ochoaa
  */
 public class LimsRequestReader implements ItemStreamReader<String> {
+    public static final String REQUEST_IDS_KEY = "limsRequestReader.requestIds";
+    public static final String READ_COUNT_KEY = "limsRequestReader.readCount";
 
     @Value("#{jobParameters[requestIds]}")
     private String requestIds;
@@ -29,31 +33,90 @@ public class LimsRequestReader implements ItemStreamReader<String> {
     @Value("#{jobParameters[endDate]}")
     private String endDate;
 
+    @Value("#{jobParameters[syncMode]}")
+    private Boolean syncMode;
+
     @Autowired
     private LimsRequestUtil limsRestUtil;
 
+    @Autowired
+    private LimsSyncStore limsSyncStore;
+
     private List<String> requestIdsList;
+    private String resolvedRequestIds;
+    private int readCount;
 
     private static final Log LOG = LogFactory.getLog(LimsRequestReader.class);
 
     @Override
     public void open(ExecutionContext ec) throws ItemStreamException {
-        if (requestIds == null || requestIds.isEmpty()) {
+        // on restart resume from the set of request ids resolved during the failed execution
+        if (ec.containsKey(REQUEST_IDS_KEY)) {
+            if (Boolean.TRUE.equals(syncMode)) {
+                // the high-water mark has not moved since the failed execution
+                startSync();
+            }
+            this.resolvedRequestIds = ec.getString(REQUEST_IDS_KEY);
+            this.readCount = ec.getInt(READ_COUNT_KEY, 0);
+            this.requestIdsList = new LinkedList<>();
+            if (!resolvedRequestIds.isEmpty()) {
+                List<String> allRequestIds = Arrays.asList(resolvedRequestIds.split(","));
+                requestIdsList.addAll(allRequestIds.subList(Math.min(readCount, allRequestIds.size()),
+                        allRequestIds.size()));
+            }
+            LOG.info("Resuming after " + readCount + " requests already published, fetching sample "
+                    + "manifests for " + requestIdsList.size() + " remaining requests...");
+            return;
+        }
+        if (Boolean.TRUE.equals(syncMode)) {
+            this.requestIdsList = new LinkedList<>(startSync());
+        } else if (requestIds == null || requestIds.isEmpty()) {
             LOG.info("Fetching data from LimsRest by the provided timestamp(s)....");
             try {
-                this.requestIdsList = limsRestUtil.getRequestIdsByDate(startDate,
-                        endDate);
+                this.requestIdsList = new LinkedList<>(limsRestUtil.getRequestIdsByDate(startDate,
+                        endDate));
             } catch (Exception ex) {
                 throw new RuntimeException(ex);
             }
         } else {
             this.requestIdsList = new LinkedList<>(Arrays.asList(requestIds.split(",")));
         }
+        this.resolvedRequestIds = String.join(",", requestIdsList);
         LOG.info("Fetching sample manifests for " + requestIdsList.size() + " requests...");
     }
 
+    /**
+     * Fetches the deliveries since the sync high-water mark, or since the start date
+     * if no sync has completed yet, and returns the request ids that need publishing.
+     * @return Set
+     */
+    private Set<String> startSync() {
+        Long highWaterMark = limsSyncStore.getHighWaterMark();
+        Date syncStartTimestamp;
+        try {
+            if (highWaterMark != null) {
+                syncStartTimestamp = new Date(highWaterMark);
+            } else if (startDate != null) {
+                syncStartTimestamp = LimsRequestUtil.DATE_FORMAT.parse(startDate);
+            } else {
+                throw new ItemStreamException("No LIMS sync has completed yet, "
+                        + "a start date is required for the first sync");
+            }
+            LOG.info("Syncing LIMS request deliveries since: " + syncStartTimestamp);
+            return limsSyncStore.startSync(limsRestUtil.getLimsRequestDeliveries(syncStartTimestamp))
+                    .keySet();
+        } catch (ItemStreamException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
     @Override
-    public void update(ExecutionContext ec) throws ItemStreamException {}
+    public void update(ExecutionContext ec) throws ItemStreamException {
+        ec.putString(REQUEST_IDS_KEY, resolvedRequestIds);
+        ec.putInt(READ_COUNT_KEY, readCount);
+    }
 
     @Override
     public void close() throws ItemStreamException {}
@@ -62,6 +125,7 @@ public class LimsRequestReader implements ItemStreamReader<String> {
     public String read() throws Exception, UnexpectedInputException, ParseException,
             NonTransientResourceException {
         if (!requestIdsList.isEmpty()) {
+            readCount++;
             return requestIdsList.remove(0);
         }
         return null;
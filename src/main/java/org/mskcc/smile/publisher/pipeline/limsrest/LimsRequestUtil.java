@@ -1,26 +1,53 @@
 package org.mskcc.smile.publisher.pipeline.limsrest;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Timer;
+import java.io.File;
+import java.io.IOException;
 import java.security.cert.X509Certificate;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.SSLContext;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLContexts;
 import org.apache.http.conn.ssl.TrustStrategy;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.config.VirtualThreads;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.env.Environment;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -31,7 +58,8 @@ import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 /**
@@ -39,7 +67,14 @@ import org.springframework.web.client.RestTemplate;
  * @author ochoaa
  */
 @Component
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB, matchIfMissing = true)
 public class LimsRequestUtil {
+    public static final String REQUEST_DELIVERIES_ENDPOINT = "request_deliveries";
+    public static final String REQUEST_SAMPLES_ENDPOINT = "request_samples";
+    public static final String SAMPLE_MANIFEST_ENDPOINT = "sample_manifest";
+    public static final int VIRTUAL_MODE_MAX_CONNECTIONS = 500;
+
     @Value("${lims.base_url}")
     private String limsBaseUrl;
 
@@ -58,7 +93,92 @@ public class LimsRequestUtil {
     @Value("${lims.request_deliveries_endpoint}")
     private String limsRequestDeliveriesEndpoint;
 
-    protected Map<String, List<String>> limsRequestErrors = new HashMap<>();
+    @Value("${lims.sample_manifest.batch_size:1}")
+    private Integer sampleManifestBatchSize;
+
+    // connection pool defaults are sized to match the async lims request thread pool,
+    // or to VIRTUAL_MODE_MAX_CONNECTIONS when calls run on virtual threads
+    @Value("${lims.http.max_connections_total:#{null}}")
+    private Integer httpMaxConnectionsTotal;
+
+    @Value("${lims.http.max_connections_per_route:#{null}}")
+    private Integer httpMaxConnectionsPerRoute;
+
+    @Value("${async.thread_pool_max:10}")
+    private Integer asyncThreadPoolMax;
+
+    @Value("${executor.mode:platform}")
+    private String executorMode;
+
+    @Value("${lims.client_mode:blocking}")
+    private String limsClientMode;
+
+    @Value("${lims.reactive.max_connections:500}")
+    private Integer reactiveMaxConnections;
+
+    @Value("${lims.http.connect_timeout_ms:10000}")
+    private Integer httpConnectTimeoutMs;
+
+    @Value("${lims.http.socket_timeout_ms:60000}")
+    private Integer httpSocketTimeoutMs;
+
+    @Value("${lims.http.connection_request_timeout_ms:30000}")
+    private Integer httpConnectionRequestTimeoutMs;
+
+    @Value("${lims.http.keep_alive_ms:30000}")
+    private Long httpKeepAliveMs;
+
+    @Value("${lims.http.idle_eviction_ms:30000}")
+    private Long httpIdleEvictionMs;
+
+    // requests per second across all LimsRest endpoints, 0 for no limit
+    @Value("${lims.rate_limit.requests_per_second:0}")
+    private Double rateLimitRequestsPerSecond;
+
+    @Value("${lims.rate_limit.burst:1}")
+    private Integer rateLimitBurst;
+
+    @Value("${lims.adaptive_concurrency.enabled:true}")
+    private Boolean adaptiveConcurrencyEnabled;
+
+    @Value("${lims.adaptive_concurrency.initial_limit:${async.thread_pool_size:5}}")
+    private Integer adaptiveConcurrencyInitialLimit;
+
+    @Value("${lims.adaptive_concurrency.min_limit:1}")
+    private Integer adaptiveConcurrencyMinLimit;
+
+    // defaults to the connection pool size
+    @Value("${lims.adaptive_concurrency.max_limit:#{null}}")
+    private Integer adaptiveConcurrencyMaxLimit;
+
+    @Value("${lims.adaptive_concurrency.window_size:50}")
+    private Integer adaptiveConcurrencyWindowSize;
+
+    @Value("${lims.adaptive_concurrency.latency_tolerance:2.0}")
+    private Double adaptiveConcurrencyLatencyTolerance;
+
+    @Value("${lims.adaptive_concurrency.error_rate_threshold:0.1}")
+    private Double adaptiveConcurrencyErrorRateThreshold;
+
+    @Value("${lims.adaptive_concurrency.backoff_ratio:0.75}")
+    private Double adaptiveConcurrencyBackoffRatio;
+
+    private CloseableHttpClient httpClient;
+    private RestTemplate restTemplate;
+    private LimsRateLimiter rateLimiter;
+    private LimsConcurrencyLimiter concurrencyLimiter;
+
+    @Autowired
+    private LimsRequestErrorRegistry limsRequestErrorRegistry;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    @Autowired
+    private Environment environment;
+
+    private final Map<String, LimsEndpointGuard> endpointGuards = new ConcurrentHashMap<>();
+
     public static final SimpleDateFormat DATE_FORMAT = new SimpleDateFormat("yyyy/MM/dd");
     private ObjectMapper mapper =  new ObjectMapper();
     private static final Log LOG = LogFactory.getLog(LimsRequestUtil.class);
@@ -95,33 +215,55 @@ public class LimsRequestUtil {
      */
     public List<String> getLimsRequestIdsByTimestamp(Date startTimestamp, Date endTimestamp)
             throws Exception {
-        String requestUrl = limsBaseUrl + limsRequestDeliveriesEndpoint
-                + String.valueOf(startTimestamp.getTime());
-        RestTemplate restTemplate = getRestTemplate();
-        HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = getRequestEntity();
-        ResponseEntity responseEntity = restTemplate.exchange(requestUrl,
-                HttpMethod.GET, requestEntity, Object.class);
-        List<Map> response = mapper.readValue(
-                mapper.writeValueAsString(responseEntity.getBody()), List.class);
-
         // if endtimestamp is provided then use it to filter the response results
         // otherwise simply return set of request ids from response as list of strings
-        List<String> requestIds = new ArrayList<>();
-        for (Map m : response) {
-            Long deliveryDate = (Long) m.get("deliveryDate");
-            Date deliveryDateTimestamp = new Date(deliveryDate);
+        Set<String> requestIds = new LinkedHashSet<>();
+        for (JsonNode delivery : fetchLimsRequestDeliveries(startTimestamp)) {
+            String requestId = delivery.path("request").asText();
+            Date deliveryDateTimestamp = new Date(delivery.path("deliveryDate").asLong());
             if (endTimestamp != null && deliveryDateTimestamp.after(endTimestamp)) {
                 LOG.debug("Request delivery date not within specified range, it will be skipped: "
-                        + m.get("request") + ", date: " + DATE_FORMAT.format(endTimestamp));
+                        + requestId + ", date: " + DATE_FORMAT.format(endTimestamp));
                 continue;
             }
-            // only add unique request ids to list
-            String requestId = (String) m.get("request");
-            if (!requestIds.contains(requestId)) {
-                requestIds.add(requestId);
-            }
+            // only add unique request ids to list, a request is included if any of its
+            // deliveries is within the range
+            requestIds.add(requestId);
         }
-        return requestIds;
+        return new ArrayList<>(requestIds);
+    }
+
+    /**
+     * Calls LimsRest and returns the requests delivered since the start timestamp, in the
+     * order returned by LimsRest. If a request was delivered more than once then its
+     * latest delivery date is returned.
+     * @param startTimestamp
+     * @return Map - delivery date in milliseconds by request id
+     * @throws Exception
+     */
+    public Map<String, Long> getLimsRequestDeliveries(Date startTimestamp) throws Exception {
+        Map<String, Long> deliveries = new LinkedHashMap<>();
+        for (JsonNode delivery : fetchLimsRequestDeliveries(startTimestamp)) {
+            deliveries.merge(delivery.path("request").asText(),
+                    delivery.path("deliveryDate").asLong(), Math::max);
+        }
+        return deliveries;
+    }
+
+    /**
+     * Calls LimsRest and returns every request delivery since the start timestamp.
+     * @param startTimestamp
+     * @return JsonNode - array of deliveries, empty if there are none
+     * @throws Exception
+     */
+    private JsonNode fetchLimsRequestDeliveries(Date startTimestamp) throws Exception {
+        String requestUrl = limsBaseUrl + limsRequestDeliveriesEndpoint
+                + String.valueOf(startTimestamp.getTime());
+        HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = getRequestEntity();
+        ResponseEntity<JsonNode> responseEntity = exchange(REQUEST_DELIVERIES_ENDPOINT,
+                () -> restTemplate.exchange(requestUrl, HttpMethod.GET, requestEntity, JsonNode.class));
+        JsonNode response = responseEntity.getBody();
+        return (response != null) ? response : mapper.createArrayNode();
     }
 
     /**
@@ -133,13 +275,14 @@ public class LimsRequestUtil {
     @Async("asyncLimsRequestThreadPoolTaskExecutor")
     public CompletableFuture<Map<String, Object>> getLimsRequestSamples(String requestId) throws Exception {
         String requestUrl = limsBaseUrl + limsRequestSamplesEndpoint + requestId;
-        RestTemplate restTemplate = getRestTemplate();
         HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = getRequestEntity();
-        ResponseEntity responseEntity = restTemplate.exchange(requestUrl,
-                HttpMethod.GET, requestEntity, Object.class);
-        Map<String, Object> response = mapper.readValue(
-                mapper.writeValueAsString(responseEntity.getBody()), Map.class);
-        LOG.debug("Response from LIMS:\n" + mapper.writeValueAsString(responseEntity.getBody()));
+        ResponseEntity<Map<String, Object>> responseEntity = exchange(REQUEST_SAMPLES_ENDPOINT,
+                () -> restTemplate.exchange(requestUrl, HttpMethod.GET, requestEntity,
+                        new ParameterizedTypeReference<Map<String, Object>>() {}));
+        Map<String, Object> response = responseEntity.getBody();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Response from LIMS:\n" + mapper.writeValueAsString(response));
+        }
         return CompletableFuture.completedFuture(response);
     }
 
@@ -148,13 +291,14 @@ public class LimsRequestUtil {
      * @param response
      * @return
      */
-    public Map<String, Map<String, Object>> getSamplesFromRequestResponse(Map<String, Object> response)
-            throws JsonProcessingException {
-        String samplesListJson = mapper.writeValueAsString(response.get("samples"));
-        List<Map> samplesListMap = mapper.readValue(samplesListJson, List.class);
-        Map<String, Map<String, Object>> samples = new HashMap<>();
-        if (samplesListMap != null) {
-            for (Map m : samplesListMap) {
+    public Map<String, Map<String, Object>> getSamplesFromRequestResponse(Map<String, Object> response) {
+        // the response has already been decoded into maps and lists so samples are read as-is
+        // keep samples in the order they are listed in the LIMS response
+        Map<String, Map<String, Object>> samples = new LinkedHashMap<>();
+        Object samplesList = response.get("samples");
+        if (samplesList instanceof List) {
+            for (Object sample : (List) samplesList) {
+                Map<String, Object> m = (Map<String, Object>) sample;
                 String sampleId = (String) m.get("igoSampleId");
                 samples.put(sampleId, m);
             }
@@ -172,36 +316,253 @@ public class LimsRequestUtil {
         String manifestUrl = limsBaseUrl + limsSampleManifestEndpoint + sampleId;
         LOG.debug("Sending request for sample manifest with url:" + manifestUrl);
 
-        RestTemplate restTemplate = getRestTemplate();
         HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = getRequestEntity();
-        Object[] sampleManifest = null;
         try {
-            ResponseEntity responseEntity = restTemplate.exchange(manifestUrl,
-                HttpMethod.GET, requestEntity, Object[].class);
-            sampleManifest = (Object[]) responseEntity.getBody();
-        } catch (HttpServerErrorException e) {
-            if (e.getStatusCode().equals(HttpStatus.INTERNAL_SERVER_ERROR)) {
+            ResponseEntity<Object[]> responseEntity = exchange(SAMPLE_MANIFEST_ENDPOINT,
+                    () -> restTemplate.exchange(manifestUrl, HttpMethod.GET, requestEntity, Object[].class));
+            Object[] sampleManifest = responseEntity.getBody();
+            if (sampleManifest != null && sampleManifest.length > 0) {
+                return CompletableFuture.completedFuture(Arrays.asList(sampleManifest));
+            }
+            LOG.error("No sample manifest returned for '" + sampleId + "', request url: '"
+                    + manifestUrl + "'");
+        } catch (RestClientException e) {
+            LOG.error("Error encountered during attempt to fetch sample manifest for '"
+                    + sampleId + "', request url: '" + manifestUrl + "'", e);
+        }
+        // samples without a manifest are reported as errors by the processor
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Returns sample manifests for a batch of sample ids, keyed by igo sample id.
+     * If the batch fails then it is split in half and each half is retried, down
+     * to single sample ids. Sample ids that still fail are not included in the
+     * returned map.
+     * @param sampleIds
+     * @return Map
+     */
+    @Async("asyncLimsRequestThreadPoolTaskExecutor")
+    public CompletableFuture<Map<String, Object>> getSampleManifests(List<String> sampleIds) {
+        Map<String, Object> sampleManifests = new HashMap<>();
+        fetchSampleManifestBatch(sampleIds, sampleManifests);
+        return CompletableFuture.completedFuture(sampleManifests);
+    }
+
+    /**
+     * Fetches sample manifests for the given batch of sample ids in a single call
+     * to LimsRest and adds them to the provided map.
+     * @param sampleIds
+     * @param sampleManifests
+     */
+    private void fetchSampleManifestBatch(List<String> sampleIds, Map<String, Object> sampleManifests) {
+        String manifestUrl = limsBaseUrl + limsSampleManifestEndpoint + StringUtils.join(sampleIds, ",");
+        LOG.debug("Sending request for sample manifests with url:" + manifestUrl);
+
+        HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = getRequestEntity();
+        try {
+            ResponseEntity<Object[]> responseEntity = exchange(SAMPLE_MANIFEST_ENDPOINT,
+                    () -> restTemplate.exchange(manifestUrl, HttpMethod.GET, requestEntity, Object[].class));
+            Object[] response = responseEntity.getBody();
+            if (response != null) {
+                for (Object sampleManifest : response) {
+                    String igoId = (String) ((Map) sampleManifest).get("igoId");
+                    sampleManifests.put(igoId, sampleManifest);
+                }
+            }
+        } catch (RestClientException e) {
+            if (sampleIds.size() == 1) {
                 LOG.error("Error encountered during attempt to fetch sample manifest for '"
-                        + sampleId + "', request url: '" + manifestUrl + "'", e);
+                        + sampleIds.get(0) + "', request url: '" + manifestUrl + "'", e);
+                return;
             }
+            LOG.warn("Error encountered during attempt to fetch sample manifests for batch of "
+                    + sampleIds.size() + " samples, splitting batch and retrying: " + sampleIds);
+            int mid = sampleIds.size() / 2;
+            fetchSampleManifestBatch(sampleIds.subList(0, mid), sampleManifests);
+            fetchSampleManifestBatch(sampleIds.subList(mid, sampleIds.size()), sampleManifests);
         }
-        return CompletableFuture.completedFuture(Arrays.asList(sampleManifest));
+    }
+
+    public Integer getSampleManifestBatchSize() {
+        return sampleManifestBatchSize;
     }
 
     /**
-     * Returns rest template that by passes SSL cert check.
-     * @return RestTemplate
+     * Initializes the pooled http client and rest template shared by all LimsRest calls.
+     * The client bypasses the SSL cert check, keeps connections alive between calls
+     * and evicts connections that have been idle for longer than the configured interval.
      * @throws Exception
      */
-    private RestTemplate getRestTemplate() throws Exception {
+    @PostConstruct
+    public void initRestTemplate() throws Exception {
+        resolveConcurrencyCaps();
         TrustStrategy acceptingTrustStrategy = (X509Certificate[] chain, String authType) -> true;
         HostnameVerifier hostnameVerifier = (s, sslSession) -> true;
         SSLContext sslContext = SSLContexts.custom().loadTrustMaterial(null, acceptingTrustStrategy).build();
         SSLConnectionSocketFactory csf = new SSLConnectionSocketFactory(sslContext, hostnameVerifier);
-        CloseableHttpClient httpClient = HttpClients.custom().setSSLSocketFactory(csf).build();
+        Registry<ConnectionSocketFactory> socketFactoryRegistry =
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                .register("https", csf)
+                .build();
+
+        PoolingHttpClientConnectionManager connectionManager =
+                new PoolingHttpClientConnectionManager(socketFactoryRegistry);
+        connectionManager.setMaxTotal(httpMaxConnectionsTotal);
+        connectionManager.setDefaultMaxPerRoute(httpMaxConnectionsPerRoute);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(httpConnectTimeoutMs)
+                .setSocketTimeout(httpSocketTimeoutMs)
+                .setConnectionRequestTimeout(httpConnectionRequestTimeoutMs)
+                .build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    // honor a shorter keep-alive advertised by the server, otherwise use configured value
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE
+                            .getKeepAliveDuration(response, context);
+                    return (keepAlive > 0) ? Math.min(keepAlive, httpKeepAliveMs) : httpKeepAliveMs;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(httpIdleEvictionMs.longValue(), TimeUnit.MILLISECONDS)
+                .build();
         HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory();
         requestFactory.setHttpClient(httpClient);
-        return new RestTemplate(requestFactory);
+        this.restTemplate = new RestTemplate(requestFactory);
+        LOG.info("Initialized LimsRest http client with connection pool size: " + httpMaxConnectionsTotal
+                + " (max per route: " + httpMaxConnectionsPerRoute + ")");
+        initLoadControl();
+    }
+
+    /**
+     * Fills in the connection pool sizes and the adaptive concurrency max limit if they
+     * are not set. The pool defaults to the async lims request thread pool size, which
+     * already bounds the calls in flight. When calls run on virtual threads nothing else
+     * bounds them, so the pool defaults to VIRTUAL_MODE_MAX_CONNECTIONS instead. The
+     * per route pool size and the max limit default to the total pool size, or the max
+     * limit to the reactive client's pool size in the reactive client mode.
+     */
+    private void resolveConcurrencyCaps() {
+        if (httpMaxConnectionsTotal == null) {
+            this.httpMaxConnectionsTotal = VirtualThreads.isEnabled(executorMode)
+                    ? VIRTUAL_MODE_MAX_CONNECTIONS : asyncThreadPoolMax;
+        }
+        if (httpMaxConnectionsPerRoute == null) {
+            this.httpMaxConnectionsPerRoute = httpMaxConnectionsTotal;
+        }
+        if (adaptiveConcurrencyMaxLimit == null) {
+            // the reactive client has its own connection pool
+            this.adaptiveConcurrencyMaxLimit = "reactive".equalsIgnoreCase(limsClientMode)
+                    ? reactiveMaxConnections : httpMaxConnectionsTotal;
+        }
+    }
+
+    /**
+     * Returns the max number of LimsRest connections, which also bounds the number of
+     * calls in flight.
+     * @return Integer
+     */
+    public Integer getHttpMaxConnectionsTotal() {
+        return httpMaxConnectionsTotal;
+    }
+
+    /**
+     * Initializes the rate limiter and adaptive concurrency limit shared by calls
+     * to all LimsRest endpoints.
+     */
+    private void initLoadControl() {
+        this.rateLimiter = new LimsRateLimiter(rateLimitRequestsPerSecond, rateLimitBurst);
+        this.concurrencyLimiter = new LimsConcurrencyLimiter(adaptiveConcurrencyEnabled,
+                adaptiveConcurrencyInitialLimit, adaptiveConcurrencyMinLimit, adaptiveConcurrencyMaxLimit,
+                adaptiveConcurrencyWindowSize, adaptiveConcurrencyLatencyTolerance,
+                adaptiveConcurrencyErrorRateThreshold, adaptiveConcurrencyBackoffRatio);
+        if (rateLimiter.isEnabled()) {
+            LOG.info("Limiting LimsRest calls to " + rateLimitRequestsPerSecond
+                    + " requests per second (burst: " + rateLimitBurst + ")");
+        }
+        if (adaptiveConcurrencyEnabled) {
+            LOG.info("Adapting LimsRest concurrency between " + adaptiveConcurrencyMinLimit + " and "
+                    + adaptiveConcurrencyMaxLimit + " calls in flight, starting at "
+                    + concurrencyLimiter.getLimit());
+        }
+    }
+
+    /**
+     * Releases pooled connections held by the LimsRest http client.
+     * @throws IOException
+     */
+    @PreDestroy
+    public void closeHttpClient() throws IOException {
+        if (httpClient != null) {
+            httpClient.close();
+        }
+    }
+
+    /**
+     * Runs a LimsRest exchange through the endpoint's retries and circuit breaker.
+     * Each attempt waits for the rate limiter and the adaptive concurrency limit,
+     * and its latency is recorded by endpoint and outcome.
+     * @param endpoint
+     * @param exchange
+     * @return ResponseEntity
+     */
+    private <T> ResponseEntity<T> exchange(String endpoint, Supplier<ResponseEntity<T>> exchange) {
+        return getEndpointGuard(endpoint).execute(() -> {
+            try {
+                rateLimiter.acquire();
+                concurrencyLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to call LimsRest", e);
+            }
+            long startNanos = System.nanoTime();
+            Timer.Sample sample = publisherMetrics.startTimer();
+            String outcome = "error";
+            boolean overloaded = true;
+            try {
+                ResponseEntity<T> responseEntity = exchange.get();
+                outcome = "success";
+                overloaded = false;
+                return responseEntity;
+            } catch (HttpClientErrorException e) {
+                overloaded = e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS;
+                throw e;
+            } finally {
+                concurrencyLimiter.release(System.nanoTime() - startNanos, overloaded);
+                publisherMetrics.stopTimer(sample, PublisherMetrics.LIMS_REQUEST_TIMER,
+                        "endpoint", endpoint, "outcome", outcome);
+            }
+        });
+    }
+
+    /**
+     * Returns the retries and circuit breaker for a LimsRest endpoint, shared by the
+     * blocking and reactive LimsRest clients.
+     * @param endpoint
+     * @return LimsEndpointGuard
+     */
+    public LimsEndpointGuard getEndpointGuard(String endpoint) {
+        return endpointGuards.computeIfAbsent(endpoint, k -> new LimsEndpointGuard(k, environment));
+    }
+
+    /**
+     * Returns the retries and circuit breaker for each LimsRest endpoint called so far.
+     * @return Collection
+     */
+    public Collection<LimsEndpointGuard> getEndpointGuards() {
+        return endpointGuards.values();
+    }
+
+    public LimsRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public LimsConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
     }
 
     /**
@@ -215,49 +576,80 @@ public class LimsRequestUtil {
         return new HttpEntity<Object>(headers);
     }
 
+    /**
+     * Returns a snapshot of the lims request errors by request id.
+     * @return Map
+     */
     public Map<String, List<String>> getLimsRequestErrors() {
-        return limsRequestErrors;
+        return limsRequestErrorRegistry.getErrorMessages();
     }
 
+    /**
+     * Replaces the lims request errors with the provided errors.
+     * @param limsRequestErrors
+     */
     public void setLimsRequestErrors(Map<String, List<String>> limsRequestErrors) {
-        this.limsRequestErrors = limsRequestErrors;
+        limsRequestErrorRegistry.clear();
+        for (Map.Entry<String, List<String>> entry : limsRequestErrors.entrySet()) {
+            for (String error : entry.getValue()) {
+                limsRequestErrorRegistry.recordError(entry.getKey(), error);
+            }
+        }
     }
 
     /**
-     * Update map with lims request errors.
+     * Update registry with lims request errors.
      * @param requestId
      * @param error
      */
     public void updateLimsRequestErrors(String requestId, String error) {
-        List<String> errors = limsRequestErrors.getOrDefault(requestId, new ArrayList<>());
-        errors.add(error);
-        this.limsRequestErrors.put(requestId, errors);
+        limsRequestErrorRegistry.recordError(requestId, error);
+    }
+
+    public LimsRequestErrorRegistry getLimsRequestErrorRegistry() {
+        return limsRequestErrorRegistry;
     }
 
     public void printFailedRequestSamplesSummary() {
         System.out.println(generateFailedRequestErrorsSummary());
     }
 
+    /**
+     * Writes the failed request samples summary as JSON to the given file.
+     * @param summaryFilepath
+     * @throws IOException
+     */
+    public void writeFailedRequestSamplesSummary(String summaryFilepath) throws IOException {
+        limsRequestErrorRegistry.writeJson(new File(summaryFilepath));
+    }
+
     /**
      * Generates message for failed request samples manifest report.
      * @return
      */
     private String generateFailedRequestErrorsSummary() {
+        Map<String, List<String>> limsRequestErrors = limsRequestErrorRegistry.getErrorMessages();
         StringBuilder builder = new StringBuilder("\nERROR SUMMARY REPORT BY REQUEST\n");
         builder.append("\t--> Total number of requests with errors: ")
                 .append(limsRequestErrors.size())
                 .append("\n");
-        for (String requestId : limsRequestErrors.keySet()) {
-            List<String> errors = limsRequestErrors.get(requestId);
+        for (Map.Entry<String, List<String>> entry : limsRequestErrors.entrySet()) {
+            List<String> errors = entry.getValue();
+            int errorCount = limsRequestErrorRegistry.getErrorCount(entry.getKey());
             builder.append("\nRequest: ")
-                    .append(requestId)
+                    .append(entry.getKey())
                     .append(", errors: ")
-                    .append(errors.size());
+                    .append(errorCount);
             for (String er : errors) {
                 builder.append("\n\t")
                         .append(er)
                         .append("\n");
             }
+            if (errorCount > errors.size()) {
+                builder.append("\n\t... ")
+                        .append(errorCount - errors.size())
+                        .append(" more errors not shown\n");
+            }
         }
         return builder.toString();
     }
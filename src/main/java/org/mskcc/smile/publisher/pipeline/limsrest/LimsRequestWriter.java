@@ -1,11 +1,18 @@
 package org.mskcc.smile.publisher.pipeline.limsrest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.Timer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.mskcc.cmo.messaging.Gateway;
+import org.mskcc.smile.publisher.pipeline.PipelinedPublisher;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemStreamWriter;
@@ -21,13 +28,30 @@ public class LimsRequestWriter implements ItemStreamWriter<Map<String, Object>>
     @Value("#{jobParameters[verbose]}")
     private Boolean verbose;
 
+    @Value("#{jobParameters[requestIds]}")
+    private String requestIds;
+
+    @Autowired
+    private PublisherSink publisherSink;
+
+    @Autowired
+    private PipelinedPublisher pipelinedPublisher;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    @Autowired
+    private LimsSyncStore limsSyncStore;
+
     @Autowired
-    private Gateway messagingGateway;
+    private LimsRequestHashStore limsRequestHashStore;
 
     @Value("${lims.publisher_topic}")
     private String LIMS_PUBLISHER_TOPIC;
 
-    private ObjectMapper mapper = new ObjectMapper();
+    // map keys are written in sorted order so that unchanged requests always hash the same
+    private ObjectMapper mapper = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
     private static final Log LOG = LogFactory.getLog(LimsRequestWriter.class);
 
     @Override
@@ -41,20 +65,60 @@ public class LimsRequestWriter implements ItemStreamWriter<Map<String, Object>>
 
     @Override
     public void write(List<? extends Map<String, Object>> requestResponseList) throws Exception {
+        List<CompletableFuture<Void>> publishes = new ArrayList<>();
         for (Map<String, Object> request : requestResponseList) {
             String requestId = (String) request.get("requestId");
+            Timer.Sample encodeTimer = publisherMetrics.startTimer();
             String requestJson = mapper.writeValueAsString(request);
+            publisherMetrics.stopTimer(encodeTimer, PublisherMetrics.JSON_ENCODE_TIMER,
+                    "source", "lims_request");
+            String contentHash = LimsRequestHashStore.hash(requestJson);
+            // requests given explicitly are always republished
+            if (StringUtils.isBlank(requestIds) && limsRequestHashStore.isUnchanged(requestId, contentHash)) {
+                LOG.info("Skipping request unchanged since last published: " + requestId);
+                recordPublished(requestId, null);
+                continue;
+            }
             if (verbose) {
                 LOG.info("\nPublishing IGO new request to SMILE:\n\n"
                         + requestJson + "\n\n on topic: " + LIMS_PUBLISHER_TOPIC);
             }
             try {
-                messagingGateway.publish(LIMS_PUBLISHER_TOPIC, requestJson);
+                publishes.add(pipelinedPublisher.submit(requestId,
+                        () -> publisherSink.publish(LIMS_PUBLISHER_TOPIC, requestJson))
+                        .thenRun(() -> recordPublished(requestId, contentHash))
+                        .exceptionally(ex -> {
+                            logPublishingError(requestId, ex);
+                            return null;
+                        }));
             } catch (Exception e) {
-                LOG.error("Error during attempt to publish on topic '" + LIMS_PUBLISHER_TOPIC
-                        + "' for request: " + requestId, e);
+                logPublishingError(requestId, e);
             }
         }
+        // wait for every request in the chunk to be published before the chunk is committed
+        pipelinedPublisher.awaitAll(publishes);
+    }
+
+    /**
+     * Records a request as published, with its content hash if it was sent. Nothing
+     * is recorded if the sink does not deliver messages to SMILE, so that dry runs do
+     * not cause the requests to be skipped by later runs.
+     * @param requestId
+     * @param contentHash
+     */
+    private void recordPublished(String requestId, String contentHash) {
+        if (!publisherSink.isDurable()) {
+            return;
+        }
+        if (contentHash != null) {
+            limsRequestHashStore.putHash(requestId, contentHash);
+        }
+        limsSyncStore.markSynced(requestId);
+    }
+
+    private void logPublishingError(String requestId, Throwable e) {
+        LOG.error("Error during attempt to publish on topic '" + LIMS_PUBLISHER_TOPIC
+                + "' for request: " + requestId, e);
     }
 
 }
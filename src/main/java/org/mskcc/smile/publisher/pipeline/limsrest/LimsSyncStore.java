@@ -0,0 +1,186 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.state.LocalStateStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Tracks LIMS request deliveries that have already been published in sync mode.
+ * The latest delivery date seen (the high-water mark) and the delivery date of
+ * every request published are kept in the local state store. A sync run only
+ * fetches deliveries since the high-water mark and only publishes requests that
+ * are new or have been delivered again since they were last published.
+ *
+ * <p>Requests that a sync run fails to publish are kept in a retry list rather than
+ * holding back the high-water mark, so that a request that keeps failing does not
+ * make every later sync fetch a growing range of deliveries. Each sync run retries
+ * them, up to 'lims.sync.max_retries' runs, after which they are dropped from the list
+ * and only published again if they are delivered again.
+ */
+@Component
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB, matchIfMissing = true)
+public class LimsSyncStore {
+    public static final String HIGH_WATER_MARK_KEY = "lims.sync.last_delivery_date";
+    private static final String SYNCED_REQUESTS_DDL = "CREATE TABLE IF NOT EXISTS lims_synced_requests ("
+            + "request_id TEXT PRIMARY KEY, delivery_date INTEGER NOT NULL, synced_at INTEGER NOT NULL)";
+    private static final String SYNC_RETRIES_DDL = "CREATE TABLE IF NOT EXISTS lims_sync_retries ("
+            + "request_id TEXT PRIMARY KEY, delivery_date INTEGER NOT NULL, attempts INTEGER NOT NULL, "
+            + "last_attempt_at INTEGER NOT NULL)";
+
+    @Value("${lims.sync.max_retries:5}")
+    private Integer maxRetries;
+
+    @Autowired
+    private LocalStateStore localStateStore;
+
+    // requests being synced in the current run by request id, with their delivery dates
+    private final Map<String, Long> pendingDeliveries = new ConcurrentHashMap<>();
+    private Long latestDeliveryDate;
+
+    private static final Log LOG = LogFactory.getLog(LimsSyncStore.class);
+
+    /**
+     * Returns the latest delivery date seen by a completed sync run or null if
+     * no sync run has completed yet.
+     * @return Long
+     */
+    public Long getHighWaterMark() {
+        String value = localStateStore.getValue(HIGH_WATER_MARK_KEY);
+        return (value == null) ? null : Long.valueOf(value);
+    }
+
+    /**
+     * Starts a sync run given the deliveries fetched since the high-water mark.
+     * Returns the deliveries that still need to be published, in the order given.
+     * @param deliveries - delivery dates by request id
+     * @return Map
+     */
+    public synchronized Map<String, Long> startSync(Map<String, Long> deliveries) {
+        localStateStore.createTable(SYNCED_REQUESTS_DDL);
+        localStateStore.createTable(SYNC_RETRIES_DDL);
+        pendingDeliveries.clear();
+        this.latestDeliveryDate = getHighWaterMark();
+        // requests that earlier sync runs failed to publish are retried first
+        Map<String, Long> toSync = new LinkedHashMap<>(getRetries());
+        for (Map.Entry<String, Long> delivery : deliveries.entrySet()) {
+            if (latestDeliveryDate == null || delivery.getValue() > latestDeliveryDate) {
+                this.latestDeliveryDate = delivery.getValue();
+            }
+            Long syncedDeliveryDate = getSyncedDeliveryDate(delivery.getKey());
+            if (syncedDeliveryDate == null || delivery.getValue() > syncedDeliveryDate) {
+                toSync.merge(delivery.getKey(), delivery.getValue(), Math::max);
+            }
+        }
+        pendingDeliveries.putAll(toSync);
+        LOG.info("Sync found " + deliveries.size() + " deliveries, " + toSync.size()
+                + " requests are new, have been delivered again since last published or are retried");
+        return toSync;
+    }
+
+    /**
+     * Records that a request has been synced in the current run.
+     * Does nothing if the request is not part of a sync run.
+     * @param requestId
+     */
+    public synchronized void markSynced(String requestId) {
+        Long deliveryDate = pendingDeliveries.remove(requestId);
+        if (deliveryDate == null) {
+            return;
+        }
+        localStateStore.update("INSERT OR REPLACE INTO lims_synced_requests "
+                + "(request_id, delivery_date, synced_at) VALUES (?, ?, ?)",
+                requestId, deliveryDate, System.currentTimeMillis());
+        localStateStore.update("DELETE FROM lims_sync_retries WHERE request_id = ?", requestId);
+    }
+
+    /**
+     * Finishes the sync run and advances the high-water mark. Requests in the run that
+     * were not synced are added to the retry list, or dropped from it once they have
+     * been retried by 'lims.sync.max_retries' sync runs.
+     */
+    public synchronized void finishSync() {
+        if (latestDeliveryDate == null) {
+            return;
+        }
+        if (!pendingDeliveries.isEmpty()) {
+            recordFailedDeliveries();
+        }
+        Long previousHighWaterMark = getHighWaterMark();
+        if (previousHighWaterMark == null || latestDeliveryDate > previousHighWaterMark) {
+            localStateStore.putValue(HIGH_WATER_MARK_KEY, String.valueOf(latestDeliveryDate));
+            LOG.info("Advanced LIMS sync high-water mark to delivery date: " + latestDeliveryDate);
+        }
+        pendingDeliveries.clear();
+        this.latestDeliveryDate = null;
+    }
+
+    /**
+     * Adds the requests that were not synced by this run to the retry list, counting
+     * the attempt, and drops those that have used up their retries.
+     */
+    private void recordFailedDeliveries() {
+        List<String> retried = new ArrayList<>();
+        List<String> givenUp = new ArrayList<>();
+        for (Map.Entry<String, Long> delivery : new TreeMap<>(pendingDeliveries).entrySet()) {
+            String requestId = delivery.getKey();
+            int attempts = getRetryAttempts(requestId) + 1;
+            if (attempts > maxRetries) {
+                localStateStore.update("DELETE FROM lims_sync_retries WHERE request_id = ?", requestId);
+                givenUp.add(requestId);
+            } else {
+                localStateStore.update("INSERT OR REPLACE INTO lims_sync_retries "
+                        + "(request_id, delivery_date, attempts, last_attempt_at) VALUES (?, ?, ?, ?)",
+                        requestId, delivery.getValue(), attempts, System.currentTimeMillis());
+                retried.add(requestId + " (" + attempts + " of " + (maxRetries + 1) + " attempts failed)");
+            }
+        }
+        if (!retried.isEmpty()) {
+            LOG.warn("Requests not synced will be retried by the next sync run: " + retried);
+        }
+        if (!givenUp.isEmpty()) {
+            LOG.error("Giving up on requests not synced by " + (maxRetries + 1) + " sync runs, "
+                    + "they are only published again if delivered again or given with "
+                    + "--request_ids: " + givenUp);
+        }
+    }
+
+    /**
+     * Returns the delivery dates of the requests in the retry list by request id.
+     * @return Map
+     */
+    private Map<String, Long> getRetries() {
+        Map<String, Long> retries = new LinkedHashMap<>();
+        localStateStore.getJdbcTemplate().query(
+                "SELECT request_id, delivery_date FROM lims_sync_retries ORDER BY delivery_date",
+                (RowCallbackHandler) rs -> retries.put(rs.getString(1), rs.getLong(2)));
+        if (!retries.isEmpty()) {
+            LOG.info("Retrying " + retries.size() + " requests not synced by earlier sync runs");
+        }
+        return retries;
+    }
+
+    private int getRetryAttempts(String requestId) {
+        List<Integer> attempts = localStateStore.getJdbcTemplate().queryForList(
+                "SELECT attempts FROM lims_sync_retries WHERE request_id = ?", Integer.class, requestId);
+        return attempts.isEmpty() ? 0 : attempts.get(0);
+    }
+
+    private Long getSyncedDeliveryDate(String requestId) {
+        List<Long> deliveryDates = localStateStore.getJdbcTemplate().queryForList(
+                "SELECT delivery_date FROM lims_synced_requests WHERE request_id = ?", Long.class, requestId);
+        return deliveryDates.isEmpty() ? null : deliveryDates.get(0);
+    }
+}
@@ -0,0 +1,211 @@
+package org.mskcc.smile.publisher.pipeline.limsrest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.mskcc.smile.publisher.pipeline.state.LocalStateStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Caches sample manifests fetched from LimsRest by igo sample id. Holds up to
+ * 'lims.manifest_cache.max_entries' manifests in memory, evicting the least recently
+ * used, and manifests expire 'lims.manifest_cache.ttl_minutes' after being fetched.
+ * If 'lims.manifest_cache.persist' is true then manifests are also kept in the local
+ * state store so they can be reused by later runs. Disabled if
+ * 'lims.manifest_cache.enabled' is false.
+ */
+@Component
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.LIMS_REQUEST_PUBLISHER_JOB, matchIfMissing = true)
+public class SampleManifestCache {
+    private static final String SAMPLE_MANIFESTS_DDL = "CREATE TABLE IF NOT EXISTS lims_sample_manifests ("
+            + "sample_id TEXT PRIMARY KEY, manifest TEXT NOT NULL, fetched_at INTEGER NOT NULL)";
+    // stays under SQLite's default limit of 999 parameters per statement
+    private static final int PERSISTED_MANIFEST_QUERY_SIZE = 500;
+
+    @Value("${lims.manifest_cache.enabled:true}")
+    private Boolean enabled;
+
+    @Value("${lims.manifest_cache.max_entries:10000}")
+    private Integer maxEntries;
+
+    @Value("${lims.manifest_cache.ttl_minutes:1440}")
+    private Long ttlMinutes;
+
+    @Value("${lims.manifest_cache.persist:false}")
+    private Boolean persist;
+
+    @Autowired
+    private LocalStateStore localStateStore;
+
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    private final Map<String, CachedManifest> manifests = new LinkedHashMap<String, CachedManifest>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedManifest> eldest) {
+            return size() > maxEntries;
+        }
+    };
+    private volatile boolean tableCreated;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private static final Log LOG = LogFactory.getLog(SampleManifestCache.class);
+
+    public Boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns copies of the cached manifests for the given samples by sample id. Samples
+     * that are not cached or whose manifests have expired are left out. Samples not held
+     * in memory are looked up in the local state store together, with one query for up
+     * to 500 samples, rather than one query each.
+     * @param sampleIds
+     * @return Map
+     */
+    public Map<String, Map<String, Object>> getAll(List<String> sampleIds) {
+        if (!enabled || sampleIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, CachedManifest> found = new HashMap<>();
+        List<String> notInMemory = new ArrayList<>();
+        synchronized (manifests) {
+            for (String sampleId : sampleIds) {
+                CachedManifest cached = manifests.get(sampleId);
+                if (cached != null) {
+                    found.put(sampleId, cached);
+                } else {
+                    notInMemory.add(sampleId);
+                }
+            }
+        }
+        if (persist && !notInMemory.isEmpty()) {
+            Map<String, CachedManifest> persisted = loadPersistedManifests(notInMemory);
+            synchronized (manifests) {
+                manifests.putAll(persisted);
+            }
+            found.putAll(persisted);
+        }
+
+        Map<String, Map<String, Object>> hits = new HashMap<>();
+        long ttlMillis = getTtlMillis();
+        for (Map.Entry<String, CachedManifest> entry : found.entrySet()) {
+            if (!entry.getValue().isExpired(ttlMillis)) {
+                hits.put(entry.getKey(), new LinkedHashMap<>(entry.getValue().manifest));
+            }
+        }
+        publisherMetrics.increment(PublisherMetrics.MANIFEST_CACHE_COUNTER, hits.size(), "result", "hit");
+        publisherMetrics.increment(PublisherMetrics.MANIFEST_CACHE_COUNTER, sampleIds.size() - hits.size(),
+                "result", "miss");
+        return hits;
+    }
+
+    /**
+     * Caches a copy of a manifest fetched from LimsRest.
+     * @param sampleId
+     * @param manifest
+     */
+    public void put(String sampleId, Map<String, Object> manifest) {
+        if (!enabled) {
+            return;
+        }
+        CachedManifest cached = new CachedManifest(new LinkedHashMap<>(manifest), System.currentTimeMillis());
+        synchronized (manifests) {
+            manifests.put(sampleId, cached);
+        }
+        if (persist) {
+            try {
+                createTable();
+                localStateStore.update("INSERT OR REPLACE INTO lims_sample_manifests "
+                        + "(sample_id, manifest, fetched_at) VALUES (?, ?, ?)",
+                        sampleId, mapper.writeValueAsString(cached.manifest), cached.fetchedAt);
+            } catch (IOException e) {
+                LOG.warn("Error persisting sample manifest to the local state store: " + sampleId, e);
+            }
+        }
+    }
+
+    /**
+     * Removes expired manifests from the local state store.
+     */
+    public void evictExpired() {
+        if (!enabled || !persist || !tableCreated) {
+            return;
+        }
+        int evicted = localStateStore.update("DELETE FROM lims_sample_manifests WHERE fetched_at < ?",
+                System.currentTimeMillis() - getTtlMillis());
+        if (evicted > 0) {
+            LOG.info("Evicted " + evicted + " expired sample manifests from the local state store");
+        }
+    }
+
+    /**
+     * Loads the persisted manifests of the given samples from the local state store.
+     * @param sampleIds
+     * @return Map
+     */
+    private Map<String, CachedManifest> loadPersistedManifests(List<String> sampleIds) {
+        createTable();
+        Map<String, CachedManifest> persisted = new HashMap<>();
+        for (int i = 0; i < sampleIds.size(); i += PERSISTED_MANIFEST_QUERY_SIZE) {
+            List<String> batch = sampleIds.subList(i, Math.min(i + PERSISTED_MANIFEST_QUERY_SIZE,
+                    sampleIds.size()));
+            String placeholders = String.join(",", Collections.nCopies(batch.size(), "?"));
+            localStateStore.getJdbcTemplate().query("SELECT sample_id, manifest, fetched_at "
+                    + "FROM lims_sample_manifests WHERE sample_id IN (" + placeholders + ")",
+                    (RowCallbackHandler) rs -> {
+                        String sampleId = rs.getString("sample_id");
+                        try {
+                            Map<String, Object> manifest =
+                                    mapper.readValue(rs.getString("manifest"), Map.class);
+                            persisted.put(sampleId, new CachedManifest(manifest, rs.getLong("fetched_at")));
+                        } catch (IOException e) {
+                            LOG.warn("Error reading sample manifest from the local state store: "
+                                    + sampleId, e);
+                        }
+                    }, batch.toArray());
+        }
+        return persisted;
+    }
+
+    private long getTtlMillis() {
+        return TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    private void createTable() {
+        if (!tableCreated) {
+            localStateStore.createTable(SAMPLE_MANIFESTS_DDL);
+            this.tableCreated = true;
+        }
+    }
+
+    private static class CachedManifest {
+        private final Map<String, Object> manifest;
+        private final long fetchedAt;
+
+        CachedManifest(Map<String, Object> manifest, long fetchedAt) {
+            this.manifest = manifest;
+            this.fetchedAt = fetchedAt;
+        }
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - fetchedAt > ttlMillis;
+        }
+    }
+}
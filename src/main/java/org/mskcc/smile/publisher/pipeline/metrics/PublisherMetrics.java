@@ -0,0 +1,277 @@
+package org.mskcc.smile.publisher.pipeline.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timers and counters recorded on the publisher hot paths. All timers publish
+ * p50, p95 and p99 percentiles. If 'metrics.prometheus_filepath' is set then the
+ * metrics can also be written to that file in the Prometheus text format.
+ *
+ * <p>Metrics are recorded for the whole process and, while a job execution is
+ * running, for that job execution alone, so that jobs run by the publisher daemon
+ * each report their own metrics. A job execution's metrics are recorded by the
+ * threads it is bound to: the job's own thread and the tasks it hands off through
+ * withCurrentJob().
+ */
+@Component
+public class PublisherMetrics {
+    public static final String LIMS_REQUEST_TIMER = "lims.request";
+    public static final String SMILE_REQUEST_TIMER = "smile.request";
+    public static final String JSON_ENCODE_TIMER = "json.encode";
+    public static final String JSON_DECODE_TIMER = "json.decode";
+    public static final String NATS_PUBLISH_TIMER = "nats.publish";
+    public static final String CHUNK_COMMIT_TIMER = "batch.chunk";
+    public static final String RECORDS_COUNTER = "batch.records";
+    public static final String MANIFEST_CACHE_COUNTER = "lims.manifest_cache";
+    public static final String LIMS_RETRIES_COUNTER = "lims.retries";
+    public static final String LIMS_CIRCUIT_BREAKER_TRIPS_COUNTER = "lims.circuit_breaker.trips";
+    private static final double[] PERCENTILES = {0.5, 0.95, 0.99};
+
+    @Value("${metrics.prometheus_filepath:}")
+    private String prometheusFilepath;
+
+    private final CompositeMeterRegistry registry = new CompositeMeterRegistry();
+    private PrometheusMeterRegistry prometheusRegistry;
+    private MeterFilter percentiles;
+    private final Map<Long, MeterRegistry> jobRegistries = new ConcurrentHashMap<>();
+    private final ThreadLocal<Long> currentJobExecutionId = new ThreadLocal<>();
+
+    @PostConstruct
+    public void init() {
+        this.percentiles = new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (id.getType() == Meter.Type.TIMER) {
+                    return DistributionStatisticConfig.builder()
+                            .percentiles(PERCENTILES)
+                            .build()
+                            .merge(config);
+                }
+                return config;
+            }
+        };
+        registry.config().meterFilter(percentiles);
+        SimpleMeterRegistry simpleRegistry = new SimpleMeterRegistry();
+        simpleRegistry.config().meterFilter(percentiles);
+        registry.add(simpleRegistry);
+        if (!StringUtils.isBlank(prometheusFilepath)) {
+            this.prometheusRegistry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+            prometheusRegistry.config().meterFilter(percentiles);
+            registry.add(prometheusRegistry);
+        }
+    }
+
+    public MeterRegistry getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Starts recording metrics for a job execution, bound to the calling thread.
+     * @param jobExecutionId
+     */
+    public void startJob(Long jobExecutionId) {
+        SimpleMeterRegistry jobRegistry = new SimpleMeterRegistry();
+        jobRegistry.config().meterFilter(percentiles);
+        jobRegistries.put(jobExecutionId, jobRegistry);
+        currentJobExecutionId.set(jobExecutionId);
+    }
+
+    /**
+     * Stops recording metrics for a job execution and discards them.
+     * @param jobExecutionId
+     */
+    public void finishJob(Long jobExecutionId) {
+        jobRegistries.remove(jobExecutionId);
+        if (jobExecutionId.equals(currentJobExecutionId.get())) {
+            currentJobExecutionId.remove();
+        }
+    }
+
+    /**
+     * Returns the id of the job execution bound to the calling thread, if any.
+     * @return Long
+     */
+    public Long getCurrentJobExecutionId() {
+        return currentJobExecutionId.get();
+    }
+
+    /**
+     * Returns the task bound to the job execution of the calling thread, so that
+     * metrics it records on another thread are counted for that job execution too.
+     * Can be used as a TaskDecorator.
+     * @param task
+     * @return Runnable
+     */
+    public Runnable withCurrentJob(Runnable task) {
+        Long jobExecutionId = currentJobExecutionId.get();
+        if (jobExecutionId == null) {
+            return task;
+        }
+        return () -> {
+            Long previousJobExecutionId = currentJobExecutionId.get();
+            currentJobExecutionId.set(jobExecutionId);
+            try {
+                task.run();
+            } finally {
+                if (previousJobExecutionId == null) {
+                    currentJobExecutionId.remove();
+                } else {
+                    currentJobExecutionId.set(previousJobExecutionId);
+                }
+            }
+        };
+    }
+
+    public Timer.Sample startTimer() {
+        return Timer.start(registry);
+    }
+
+    /**
+     * Stops the timer sample and records it against the named timer.
+     * @param sample
+     * @param name
+     * @param tags - alternating tag keys and values
+     */
+    public void stopTimer(Timer.Sample sample, String name, String... tags) {
+        stopTimer(currentJobExecutionId.get(), sample, name, tags);
+    }
+
+    /**
+     * Stops the timer sample and records it against the named timer, for the given
+     * job execution rather than the one bound to the calling thread.
+     * @param jobExecutionId
+     * @param sample
+     * @param name
+     * @param tags - alternating tag keys and values
+     */
+    public void stopTimer(Long jobExecutionId, Timer.Sample sample, String name, String... tags) {
+        long durationNanos = sample.stop(registry.timer(name, tags));
+        MeterRegistry jobRegistry = getJobRegistry(jobExecutionId);
+        if (jobRegistry != null) {
+            jobRegistry.timer(name, tags).record(durationNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Increments the named counter.
+     * @param name
+     * @param amount
+     * @param tags - alternating tag keys and values
+     */
+    public void increment(String name, double amount, String... tags) {
+        registry.counter(name, tags).increment(amount);
+        MeterRegistry jobRegistry = getJobRegistry(currentJobExecutionId.get());
+        if (jobRegistry != null) {
+            jobRegistry.counter(name, tags).increment(amount);
+        }
+    }
+
+    /**
+     * Returns a summary of all timers (count, mean, percentiles, max) and counters
+     * recorded since the publisher started.
+     * @return String
+     */
+    public String generateSummary() {
+        return generateSummary(registry, "PUBLISHER METRICS SUMMARY");
+    }
+
+    /**
+     * Returns a summary of the timers and counters recorded for a running job execution.
+     * @param jobExecutionId
+     * @return String
+     */
+    public String generateJobSummary(Long jobExecutionId) {
+        MeterRegistry jobRegistry = getJobRegistry(jobExecutionId);
+        if (jobRegistry == null) {
+            return generateSummary();
+        }
+        return generateSummary(jobRegistry, "PUBLISHER METRICS SUMMARY FOR JOB EXECUTION " + jobExecutionId);
+    }
+
+    private MeterRegistry getJobRegistry(Long jobExecutionId) {
+        return (jobExecutionId == null) ? null : jobRegistries.get(jobExecutionId);
+    }
+
+    private String generateSummary(MeterRegistry meterRegistry, String title) {
+        StringBuilder builder = new StringBuilder("\n").append(title).append("\n");
+        List<Meter> meters = new ArrayList<>(meterRegistry.getMeters());
+        meters.sort(Comparator.comparing((Meter m) -> m.getId().getName())
+                .thenComparing(m -> formatTags(m.getId())));
+        for (Meter meter : meters) {
+            if (meter instanceof Timer) {
+                Timer timer = (Timer) meter;
+                if (timer.count() == 0) {
+                    continue;
+                }
+                HistogramSnapshot snapshot = timer.takeSnapshot();
+                builder.append("\n\t").append(timer.getId().getName()).append(formatTags(timer.getId()))
+                        .append(": count=").append(timer.count())
+                        .append(", mean=").append(formatMillis(timer.mean(TimeUnit.MILLISECONDS)));
+                for (ValueAtPercentile percentile : snapshot.percentileValues()) {
+                    builder.append(", p").append(Math.round(percentile.percentile() * 100)).append("=")
+                            .append(formatMillis(percentile.value(TimeUnit.MILLISECONDS)));
+                }
+                builder.append(", max=").append(formatMillis(timer.max(TimeUnit.MILLISECONDS)));
+            } else if (meter instanceof Counter) {
+                Counter counter = (Counter) meter;
+                builder.append("\n\t").append(counter.getId().getName()).append(formatTags(counter.getId()))
+                        .append(": ").append((long) counter.count());
+            }
+        }
+        return builder.append("\n").toString();
+    }
+
+    /**
+     * Writes the metrics in Prometheus text format to 'metrics.prometheus_filepath', if set.
+     * @throws IOException
+     */
+    public void writePrometheusSnapshot() throws IOException {
+        if (prometheusRegistry == null) {
+            return;
+        }
+        FileUtils.writeStringToFile(new File(prometheusFilepath), prometheusRegistry.scrape(),
+                StandardCharsets.UTF_8);
+    }
+
+    public String getPrometheusFilepath() {
+        return prometheusFilepath;
+    }
+
+    private String formatTags(Meter.Id id) {
+        if (id.getTags().isEmpty()) {
+            return "";
+        }
+        return id.getTags().stream().map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private String formatMillis(double millis) {
+        return String.format("%.2f ms", millis);
+    }
+}
@@ -0,0 +1,87 @@
+package org.mskcc.smile.publisher.pipeline.metrics;
+
+import io.micrometer.core.instrument.Timer;
+import java.io.IOException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Records chunk commit times and per-step record counts, and reports the
+ * metrics summary of the job execution when a job finishes.
+ */
+public class PublisherMetricsListener implements JobExecutionListener, StepExecutionListener,
+        ChunkListener {
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    // chunks are always run start to finish on the same thread
+    private final ThreadLocal<Timer.Sample> chunkTimer = new ThreadLocal<>();
+
+    private static final Log LOG = LogFactory.getLog(PublisherMetricsListener.class);
+
+    @Override
+    public void beforeJob(JobExecution je) {
+        publisherMetrics.startJob(je.getId());
+    }
+
+    @Override
+    public void afterJob(JobExecution je) {
+        LOG.info(publisherMetrics.generateJobSummary(je.getId()));
+        publisherMetrics.finishJob(je.getId());
+        try {
+            publisherMetrics.writePrometheusSnapshot();
+        } catch (IOException e) {
+            LOG.error("Error writing metrics to: " + publisherMetrics.getPrometheusFilepath(), e);
+        }
+    }
+
+    @Override
+    public void beforeStep(StepExecution se) {}
+
+    @Override
+    public ExitStatus afterStep(StepExecution se) {
+        String jobName = se.getJobExecution().getJobInstance().getJobName();
+        recordCount(jobName, se.getStepName(), "read", se.getReadCount());
+        recordCount(jobName, se.getStepName(), "processed", se.getWriteCount() + se.getFilterCount());
+        recordCount(jobName, se.getStepName(), "written", se.getWriteCount());
+        recordCount(jobName, se.getStepName(), "skipped", se.getSkipCount());
+        return null;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext cc) {
+        chunkTimer.set(publisherMetrics.startTimer());
+    }
+
+    @Override
+    public void afterChunk(ChunkContext cc) {
+        stopChunkTimer(cc, "success");
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext cc) {
+        stopChunkTimer(cc, "error");
+    }
+
+    private void stopChunkTimer(ChunkContext cc, String outcome) {
+        Timer.Sample sample = chunkTimer.get();
+        if (sample != null) {
+            chunkTimer.remove();
+            publisherMetrics.stopTimer(sample, PublisherMetrics.CHUNK_COMMIT_TIMER,
+                    "step", cc.getStepContext().getStepName(), "outcome", outcome);
+        }
+    }
+
+    private void recordCount(String jobName, String stepName, String type, long count) {
+        publisherMetrics.increment(PublisherMetrics.RECORDS_COUNTER, count,
+                "job", jobName, "step", stepName, "type", type);
+    }
+}
@@ -0,0 +1,62 @@
+package org.mskcc.smile.publisher.pipeline.sink;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes published messages to a file instead of sending them, one message per
+ * line as tab-separated date, topic and message, which is the format read by the
+ * file publisher. The file can be replayed with '--publisher_filename'. Tabs and
+ * line breaks in a message are replaced by spaces so each message stays on one
+ * line; these can only appear as whitespace between JSON tokens, so JSON messages
+ * are unchanged.
+ */
+public class FilePublisherSink implements PublisherSink {
+    private final Path outputFile;
+    private final BufferedWriter writer;
+    private final String date;
+    private long messageCount;
+
+    private static final Log LOG = LogFactory.getLog(FilePublisherSink.class);
+
+    /**
+     * Creates or truncates the output file.
+     * @param outputFile
+     * @throws IOException
+     */
+    public FilePublisherSink(Path outputFile) throws IOException {
+        this.outputFile = outputFile;
+        this.writer = Files.newBufferedWriter(outputFile, StandardCharsets.UTF_8);
+        this.date = new SimpleDateFormat("yyyy/MM/dd").format(new Date());
+        LOG.info("Writing published messages to: " + outputFile);
+    }
+
+    @Override
+    public synchronized void publish(String topic, String message) throws IOException {
+        writer.write(date);
+        writer.write('\t');
+        writer.write(topic);
+        writer.write('\t');
+        writer.write(message.replace('\t', ' ').replace('\r', ' ').replace('\n', ' '));
+        writer.write('\n');
+        messageCount++;
+    }
+
+    @Override
+    public void publish(String msgId, String topic, String message) throws IOException {
+        publish(topic, message);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+        LOG.info("Wrote " + messageCount + " published messages to: " + outputFile);
+    }
+}
@@ -0,0 +1,35 @@
+package org.mskcc.smile.publisher.pipeline.sink;
+
+import org.mskcc.cmo.messaging.Gateway;
+
+/**
+ * Publishes messages to NATS through the messaging gateway.
+ */
+public class NatsPublisherSink implements PublisherSink {
+    private final Gateway messagingGateway;
+
+    /**
+     * Connects the messaging gateway.
+     * @param messagingGateway
+     * @throws Exception
+     */
+    public NatsPublisherSink(Gateway messagingGateway) throws Exception {
+        this.messagingGateway = messagingGateway;
+        messagingGateway.connect();
+    }
+
+    @Override
+    public void publish(String topic, String message) throws Exception {
+        messagingGateway.publish(topic, message);
+    }
+
+    @Override
+    public void publish(String msgId, String topic, String message) throws Exception {
+        messagingGateway.publish(msgId, topic, message);
+    }
+
+    @Override
+    public Boolean isDurable() {
+        return Boolean.TRUE;
+    }
+}
@@ -0,0 +1,41 @@
+package org.mskcc.smile.publisher.pipeline.sink;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Counts published messages without sending them anywhere.
+ */
+public class NoopPublisherSink implements PublisherSink {
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong byteCount = new AtomicLong();
+
+    private static final Log LOG = LogFactory.getLog(NoopPublisherSink.class);
+
+    @Override
+    public void publish(String topic, String message) {
+        messageCount.incrementAndGet();
+        byteCount.addAndGet(message.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Override
+    public void publish(String msgId, String topic, String message) {
+        publish(topic, message);
+    }
+
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    @Override
+    public void close() {
+        LOG.info("Dropped " + messageCount.get() + " messages (" + byteCount.get()
+                + " bytes) published to the noop publisher sink");
+    }
+}
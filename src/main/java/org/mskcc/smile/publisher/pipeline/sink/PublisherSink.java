@@ -0,0 +1,48 @@
+package org.mskcc.smile.publisher.pipeline.sink;
+
+/**
+ * Destination for published messages, selected with 'publisher.sink'. Messages
+ * are published to NATS by default, but can be written to a file in the format
+ * read by the file publisher or dropped, so that the rest of a job can be run and
+ * measured without a NATS connection.
+ */
+public interface PublisherSink extends AutoCloseable {
+    String NATS = "nats";
+    String FILE = "file";
+    String NOOP = "noop";
+
+    /**
+     * Publishes a message to the given topic.
+     * @param topic
+     * @param message
+     * @throws Exception
+     */
+    void publish(String topic, String message) throws Exception;
+
+    /**
+     * Publishes a message to the given topic with a message id.
+     * @param msgId
+     * @param topic
+     * @param message
+     * @throws Exception
+     */
+    void publish(String msgId, String topic, String message) throws Exception;
+
+    /**
+     * Returns true if messages published to the sink are delivered to SMILE. State
+     * that records requests as published, such as LIMS request hashes and the sync
+     * high-water mark, is only updated for durable sinks so that a dry run to a file
+     * or noop sink does not stop a later run from publishing the same requests.
+     * @return Boolean
+     */
+    default Boolean isDurable() {
+        return Boolean.FALSE;
+    }
+
+    /**
+     * Flushes and releases anything held by the sink.
+     * @throws Exception
+     */
+    @Override
+    default void close() throws Exception {}
+}
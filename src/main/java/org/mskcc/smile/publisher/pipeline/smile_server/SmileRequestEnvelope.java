@@ -0,0 +1,90 @@
+package org.mskcc.smile.publisher.pipeline.smile_server;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A request fetched from the SMILE service. Carries the raw request JSON
+ * along with the fields needed to filter and publish it, so that the request
+ * JSON only has to be parsed once.
+ */
+public class SmileRequestEnvelope {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final String igoRequestId;
+    private final Boolean isCmoRequest;
+    private final byte[] requestJson;
+
+    public SmileRequestEnvelope(String igoRequestId, Boolean isCmoRequest, byte[] requestJson) {
+        this.igoRequestId = igoRequestId;
+        this.isCmoRequest = isCmoRequest;
+        this.requestJson = requestJson;
+    }
+
+    public String getIgoRequestId() {
+        return igoRequestId;
+    }
+
+    public Boolean isCmoRequest() {
+        return isCmoRequest;
+    }
+
+    public byte[] getRequestJson() {
+        return requestJson;
+    }
+
+    public String getRequestJsonAsString() {
+        return new String(requestJson, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Splits a JSON array of requests into envelopes in a single streaming pass.
+     * Only the top-level 'igoRequestId' and 'isCmoRequest' fields are read, the
+     * rest of each request is copied as-is from the given bytes.
+     * @param requestsJson
+     * @return List
+     * @throws IOException
+     */
+    public static List<SmileRequestEnvelope> fromJsonArray(byte[] requestsJson) throws IOException {
+        List<SmileRequestEnvelope> requests = new ArrayList<>();
+        if (requestsJson == null || requestsJson.length == 0) {
+            return requests;
+        }
+        try (JsonParser parser = JSON_FACTORY.createParser(requestsJson)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of requests but found: "
+                        + parser.currentToken());
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                int start = (int) parser.getTokenLocation().getByteOffset();
+                String igoRequestId = null;
+                Boolean isCmoRequest = Boolean.FALSE;
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String fieldName = parser.getCurrentName();
+                    JsonToken value = parser.nextToken();
+                    if ("igoRequestId".equals(fieldName)) {
+                        igoRequestId = parser.getValueAsString();
+                    } else if ("isCmoRequest".equals(fieldName)) {
+                        isCmoRequest = (value == JsonToken.VALUE_TRUE);
+                    } else {
+                        parser.skipChildren();
+                    }
+                }
+                int end = (int) parser.getCurrentLocation().getByteOffset();
+                requests.add(new SmileRequestEnvelope(igoRequestId, isCmoRequest,
+                        Arrays.copyOfRange(requestsJson, start, end)));
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Expected a JSON object for each request but found: "
+                        + parser.currentToken());
+            }
+        }
+        return requests;
+    }
+}
@@ -1,23 +1,36 @@
 package org.mskcc.smile.publisher.pipeline.smile_server;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
- *
+ * Fetches requests from the SMILE service in chunks of 'smile.request_id.chunk_size'
+ * request ids. Up to 'smile.fetch.max_concurrency' chunks are fetched concurrently
+ * and requests are handed to the writer as soon as their chunk arrives. At most
+ * 'smile.fetch.prefetch_chunks' chunks worth of requests are buffered ahead of the
+ * writer, fetches wait for the writer to catch up once the buffer is full.
+ * Requests are not necessarily returned in the order of the request ids given.
  * @author ochoaa
  */
-public class SmileServiceReader implements ItemStreamReader<String> {
+public class SmileServiceReader implements ItemStreamReader<SmileRequestEnvelope> {
+    private static final long POLL_TIMEOUT_MS = 100L;
+
     @Value("#{jobParameters[requestIds]}")
     private String requestIds;
 
@@ -27,62 +40,102 @@ public class SmileServiceReader implements ItemStreamReader<String> {
     @Value("${smile.request_id.chunk_size:25}")
     private int chunkSize;
 
+    @Value("${smile.fetch.max_concurrency:4}")
+    private int maxConcurrentFetches;
+
+    @Value("${smile.fetch.prefetch_chunks:4}")
+    private int prefetchChunks;
+
     @Autowired
     private SmileServiceUtil smileServiceUtil;
 
-    private List<String> smileRequestsList;
+    @Autowired
+    private PublisherMetrics publisherMetrics;
+
+    private ExecutorService fetchExecutor;
+    private BlockingQueue<SmileRequestEnvelope> smileRequestsQueue;
+    private final AtomicInteger remainingChunks = new AtomicInteger();
+    private final AtomicInteger fetchedRequests = new AtomicInteger();
 
-    private final ObjectMapper mapper = new ObjectMapper();
     private static final Log LOG = LogFactory.getLog(SmileServiceReader.class);
 
     @Override
     public void open(ExecutionContext ec) throws ItemStreamException {
-        List<String> requestJSONs = new ArrayList<String>();
         List<String> rIds = Arrays.asList(requestIds.split(","));
+        int chunkCount = (rIds.size() + chunkSize - 1) / chunkSize;
+        this.smileRequestsQueue = new ArrayBlockingQueue<>(Math.max(1, prefetchChunks) * chunkSize);
+        this.remainingChunks.set(chunkCount);
 
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("smile-service-fetch-");
+        threadFactory.setDaemon(true);
+        this.fetchExecutor = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(maxConcurrentFetches, chunkCount)), threadFactory);
         for (int i = 0; i < rIds.size(); i += chunkSize) {
             List<String> rIdChunk = rIds.subList(i, Math.min(i + chunkSize, rIds.size()));
-            try {
-                String requestJson = smileServiceUtil.getRequestsById(rIdChunk);
-                mapper.readTree(requestJson).forEach(node -> requestJSONs.add(node.toString()));
-            } catch (Exception ex) {
-                LOG.error("Exception thrown while processing a request contained in the following chunk, "
-                          + "dropping to query by single request id: " + rIdChunk);
-                for (int j = 0; j < rIdChunk.size(); j++) {
-                    List<String> rIdsChunkSub = rIdChunk.subList(j, Math.min(j + 1, rIdChunk.size()));
-                    try {
-                        String requestJson = smileServiceUtil.getRequestsById(rIdsChunkSub);
-                        mapper.readTree(requestJson).forEach(node -> requestJSONs.add(node.toString()));
-                    } catch (Exception e) {
-                        LOG.error("Exception thrown while processing request, skipping: " + rIdsChunkSub);
-                        LOG.error("Exception: ", e);
-                    }
-                }
-            }
+            fetchExecutor.submit(publisherMetrics.withCurrentJob(() -> fetchChunk(rIdChunk)));
         }
+        fetchExecutor.shutdown();
+        LOG.info("Fetching " + rIds.size() + " requests from SMILE in " + chunkCount + " chunks");
+    }
 
-        this.smileRequestsList = (cmoRequestsFilter) ? filterNonCMORequests(requestJSONs) : requestJSONs;
-        LOG.info("Total requests publishing to topic: " + String.valueOf(smileRequestsList.size()));
+    /**
+     * Fetches a chunk of requests and adds them to the queue of requests to publish,
+     * waiting for space in the queue if it is full.
+     * @param rIdChunk
+     */
+    private void fetchChunk(List<String> rIdChunk) {
+        try {
+            List<SmileRequestEnvelope> requests = getRequestsById(rIdChunk);
+            if (cmoRequestsFilter) {
+                requests = filterNonCMORequests(requests);
+            }
+            for (SmileRequestEnvelope request : requests) {
+                smileRequestsQueue.put(request);
+                fetchedRequests.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            remainingChunks.decrementAndGet();
+        }
     }
 
-    private List<String> filterNonCMORequests(List<String> requestJSONs) {
-        List<String> toReturn = new ArrayList<String>();
-        for (String requestJSON : requestJSONs) {
-            try {
-                Map<String, Object> requestMap = mapper.readValue(requestJSON, Map.class);
-                Boolean isCmoRequest = (Boolean) requestMap.getOrDefault("isCmoRequest", Boolean.FALSE);
-                if (isCmoRequest) {
-                    toReturn.add(requestJSON);
-                    continue;
+    /**
+     * Returns the requests for a chunk of request ids. If the chunk fails then
+     * each request in the chunk is fetched on its own.
+     * @param rIdChunk
+     * @return List
+     */
+    private List<SmileRequestEnvelope> getRequestsById(List<String> rIdChunk) {
+        List<SmileRequestEnvelope> requests = new ArrayList<>();
+        try {
+            requests.addAll(smileServiceUtil.getRequestsById(rIdChunk));
+        } catch (Exception ex) {
+            LOG.error("Exception thrown while processing a request contained in the following chunk, "
+                      + "dropping to query by single request id: " + rIdChunk);
+            requests.clear();
+            for (int j = 0; j < rIdChunk.size(); j++) {
+                List<String> rIdsChunkSub = rIdChunk.subList(j, Math.min(j + 1, rIdChunk.size()));
+                try {
+                    requests.addAll(smileServiceUtil.getRequestsById(rIdsChunkSub));
+                } catch (Exception e) {
+                    LOG.error("Exception thrown while processing request, skipping: " + rIdsChunkSub);
+                    LOG.error("Exception: ", e);
                 }
-                String requestId = (String) requestMap.get("igoRequestId");
-                LOG.info("Skipping non-CMO request: " + requestId + "...");
-            } catch (Exception e) {
-                LOG.error("Exception thrown while filtering request, "
-                          + "not including request in published set...");
-                LOG.error("Exception: ", e);
             }
         }
+        return requests;
+    }
+
+    List<SmileRequestEnvelope> filterNonCMORequests(List<SmileRequestEnvelope> requests) {
+        List<SmileRequestEnvelope> toReturn = new ArrayList<>();
+        for (SmileRequestEnvelope request : requests) {
+            if (request.isCmoRequest()) {
+                toReturn.add(request);
+                continue;
+            }
+            LOG.info("Skipping non-CMO request: " + request.getIgoRequestId() + "...");
+        }
         return toReturn;
     }
 
@@ -90,14 +143,26 @@ public class SmileServiceReader implements ItemStreamReader<String> {
     public void update(ExecutionContext ec) throws ItemStreamException {}
 
     @Override
-    public void close() throws ItemStreamException {}
+    public void close() throws ItemStreamException {
+        if (fetchExecutor != null) {
+            // stops any fetches still running if the step ended early
+            fetchExecutor.shutdownNow();
+        }
+        LOG.info("Total requests publishing to topic: " + String.valueOf(fetchedRequests.get()));
+    }
 
     @Override
-    public String read() throws Exception {
-        if (!smileRequestsList.isEmpty()) {
-            return smileRequestsList.remove(0);
+    public SmileRequestEnvelope read() throws Exception {
+        while (true) {
+            SmileRequestEnvelope request = smileRequestsQueue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            if (request != null) {
+                return request;
+            }
+            // chunks add all of their requests to the queue before they are counted as done
+            if (remainingChunks.get() == 0 && smileRequestsQueue.isEmpty()) {
+                return null;
+            }
         }
-        return null;
     }
 
 }
@@ -1,10 +1,12 @@
 package org.mskcc.smile.publisher.pipeline.smile_server;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import java.util.ArrayList;
-import java.util.Arrays;
+import io.micrometer.core.instrument.Timer;
 import java.util.List;
+import org.mskcc.smile.publisher.pipeline.config.BatchConfiguration;
+import org.mskcc.smile.publisher.pipeline.metrics.PublisherMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
@@ -19,27 +21,43 @@ import org.springframework.web.client.RestTemplate;
  * @author ochoaa
  */
 @Component
+@ConditionalOnProperty(name = BatchConfiguration.PUBLISHER_JOB_PROPERTY,
+        havingValue = BatchConfiguration.SMILE_SERVICE_PUBLISHER_JOB, matchIfMissing = true)
 public class SmileServiceUtil {
-    private final ObjectMapper mapper = new ObjectMapper();
+    private final RestTemplate restTemplate = new RestTemplate();
     @Value("${smile.base_url}")
     private String smileBaseUrl;
     @Value("${smile.request_endpoint}")
     private String smileRequestEndpoint;
+    @Autowired
+    private PublisherMetrics publisherMetrics;
 
     /**
-     * Given a requestID, returns response from the SMILE web service.
+     * Given a list of request ids, returns the requests from the SMILE web service.
+     * The raw response is split into requests in a single parse.
      * @param requestIds
-     * @return String
+     * @return List
      * @throws Exception
      */
-    public String getRequestsById(List<String> requestIds) throws Exception {
+    public List<SmileRequestEnvelope> getRequestsById(List<String> requestIds) throws Exception {
         String requestUrl = smileBaseUrl + smileRequestEndpoint;
-        RestTemplate restTemplate = new RestTemplate();
         HttpEntity<LinkedMultiValueMap<String, Object>> requestEntity = getRequestEntity(requestIds);
-        ResponseEntity responseEntity = restTemplate.exchange(requestUrl,
-                HttpMethod.POST, requestEntity, Object.class);
-        String requestJsonString = mapper.writeValueAsString(responseEntity.getBody());
-        return requestJsonString;
+        Timer.Sample sample = publisherMetrics.startTimer();
+        String outcome = "error";
+        byte[] response;
+        try {
+            ResponseEntity<byte[]> responseEntity = restTemplate.exchange(requestUrl,
+                    HttpMethod.POST, requestEntity, byte[].class);
+            outcome = "success";
+            response = responseEntity.getBody();
+        } finally {
+            publisherMetrics.stopTimer(sample, PublisherMetrics.SMILE_REQUEST_TIMER, "outcome", outcome);
+        }
+        Timer.Sample decodeTimer = publisherMetrics.startTimer();
+        List<SmileRequestEnvelope> requests = SmileRequestEnvelope.fromJsonArray(response);
+        publisherMetrics.stopTimer(decodeTimer, PublisherMetrics.JSON_DECODE_TIMER,
+                "source", "smile_request");
+        return requests;
     }
 
     /**
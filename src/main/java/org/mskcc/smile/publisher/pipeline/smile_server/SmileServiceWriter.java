@@ -1,11 +1,12 @@
 package org.mskcc.smile.publisher.pipeline.smile_server;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.mskcc.cmo.messaging.Gateway;
+import org.mskcc.smile.publisher.pipeline.PipelinedPublisher;
+import org.mskcc.smile.publisher.pipeline.sink.PublisherSink;
 import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemStreamException;
 import org.springframework.batch.item.ItemStreamWriter;
@@ -16,18 +17,20 @@ import org.springframework.beans.factory.annotation.Value;
  *
  * @author ochoaa
  */
-public class SmileServiceWriter implements ItemStreamWriter<String> {
+public class SmileServiceWriter implements ItemStreamWriter<SmileRequestEnvelope> {
 
     @Value("#{jobParameters[verbose]}")
     private Boolean verbose;
 
     @Autowired
-    private Gateway messagingGateway;
+    private PublisherSink publisherSink;
+
+    @Autowired
+    private PipelinedPublisher pipelinedPublisher;
 
     @Value("${smile.cmo_new_request_topic}")
     private String CMO_NEW_REQ_TOPIC;
 
-    private final ObjectMapper mapper = new ObjectMapper();
     private static final Log LOG = LogFactory.getLog(SmileServiceWriter.class);
 
     @Override
@@ -40,20 +43,33 @@ public class SmileServiceWriter implements ItemStreamWriter<String> {
     public void close() throws ItemStreamException {}
 
     @Override
-    public void write(List<? extends String> requestResponseList) throws Exception {
-        for (String requestJson : requestResponseList) {
-            Map<String, Object> reqMap = mapper.readValue(requestJson, Map.class);
-            String requestId = (String) reqMap.get("igoRequestId");
+    public void write(List<? extends SmileRequestEnvelope> requestResponseList) throws Exception {
+        List<CompletableFuture<Void>> publishes = new ArrayList<>();
+        for (SmileRequestEnvelope request : requestResponseList) {
+            // the request json is published as fetched from SMILE without being parsed again
+            String requestId = request.getIgoRequestId();
+            String requestJson = request.getRequestJsonAsString();
             if (verbose) {
                 LOG.info("\nPulling request from SMILE:\n\n"
                         + requestJson + "\n\n and publishing to topic: " + CMO_NEW_REQ_TOPIC);
             }
             try {
-                messagingGateway.publish(requestId, CMO_NEW_REQ_TOPIC, requestJson);
+                publishes.add(pipelinedPublisher.submit(requestId,
+                        () -> publisherSink.publish(requestId, CMO_NEW_REQ_TOPIC, requestJson))
+                        .exceptionally(ex -> {
+                            logPublishingError(requestId, ex);
+                            return null;
+                        }));
             } catch (Exception e) {
-                LOG.error("Error during attempt to publish on topic '" + CMO_NEW_REQ_TOPIC
-                        + "' for request: " + requestId, e);
+                logPublishingError(requestId, e);
             }
         }
+        // wait for every request in the chunk to be published before the chunk is committed
+        pipelinedPublisher.awaitAll(publishes);
+    }
+
+    private void logPublishingError(String requestId, Throwable e) {
+        LOG.error("Error during attempt to publish on topic '" + CMO_NEW_REQ_TOPIC
+                + "' for request: " + requestId, e);
     }
 }
@@ -0,0 +1,100 @@
+package org.mskcc.smile.publisher.pipeline.state;
+
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local SQLite database for publisher state kept between runs, separate from the
+ * Spring Batch job repository so that resetting the job repository does not lose it.
+ * The database file is 'publisher.state_store' and is only created once the state
+ * store is first used. Each table is created by the component that owns it.
+ *
+ * <p>The store is read from the LIMS request processor threads while other threads
+ * write to it, so it uses write-ahead logging and the same busy timeout and immediate
+ * transactions as the job repository: reads do not block on a write, and a read or
+ * write that finds the database locked waits up to 'publisher.state_store_busy_timeout_ms'
+ * instead of failing with SQLITE_BUSY.
+ */
+@Component
+public class LocalStateStore {
+    private static final String STATE_TABLE_DDL = "CREATE TABLE IF NOT EXISTS publisher_state ("
+            + "state_key TEXT PRIMARY KEY, state_value TEXT NOT NULL)";
+
+    @Value("${publisher.state_store:publisher_state.sqlite}")
+    private String stateStoreFilename;
+
+    @Value("${publisher.state_store_busy_timeout_ms:30000}")
+    private Integer stateStoreBusyTimeoutMs;
+
+    private JdbcTemplate jdbcTemplate;
+
+    private static final Log LOG = LogFactory.getLog(LocalStateStore.class);
+
+    /**
+     * Returns the jdbc template for the state store, creating the database on first use.
+     * @return JdbcTemplate
+     */
+    public synchronized JdbcTemplate getJdbcTemplate() {
+        if (jdbcTemplate == null) {
+            Properties connectionProperties = new Properties();
+            connectionProperties.setProperty("journal_mode", "WAL");
+            connectionProperties.setProperty("busy_timeout", String.valueOf(stateStoreBusyTimeoutMs));
+            connectionProperties.setProperty("transaction_mode", "IMMEDIATE");
+            DriverManagerDataSource dataSource = new DriverManagerDataSource();
+            dataSource.setDriverClassName("org.sqlite.JDBC");
+            dataSource.setUrl("jdbc:sqlite:" + stateStoreFilename);
+            dataSource.setConnectionProperties(connectionProperties);
+            JdbcTemplate template = new JdbcTemplate(dataSource);
+            template.execute(STATE_TABLE_DDL);
+            this.jdbcTemplate = template;
+            LOG.info("Opened local publisher state store: " + stateStoreFilename);
+        }
+        return jdbcTemplate;
+    }
+
+    /**
+     * Creates a table if it does not exist yet.
+     * @param tableDdl - a CREATE TABLE IF NOT EXISTS statement
+     */
+    public void createTable(String tableDdl) {
+        getJdbcTemplate().execute(tableDdl);
+    }
+
+    /**
+     * Runs an insert, update or delete statement. Writes are serialized since SQLite
+     * only allows one writer at a time.
+     * @param sql
+     * @param args
+     * @return int - number of rows affected
+     */
+    public synchronized int update(String sql, Object... args) {
+        return getJdbcTemplate().update(sql, args);
+    }
+
+    /**
+     * Returns the stored value for the given key or null if there is none.
+     * @param key
+     * @return String
+     */
+    public String getValue(String key) {
+        List<String> values = getJdbcTemplate().queryForList(
+                "SELECT state_value FROM publisher_state WHERE state_key = ?", String.class, key);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /**
+     * Stores the value for the given key, replacing any existing value.
+     * @param key
+     * @param value
+     */
+    public void putValue(String key, String value) {
+        update("INSERT OR REPLACE INTO publisher_state (state_key, state_value) VALUES (?, ?)",
+                key, value);
+    }
+}